@@ -1,40 +1,98 @@
 package snippets;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.IntSummaryStatistics;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
+import java.util.OptionalDouble;
 import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
 import java.util.function.IntFunction;
 import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collector;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
 public abstract class Snippets {
 
@@ -78,6 +136,14 @@ public abstract class Snippets {
         return Arrays.stream(numbers).max();
     }
 
+    public static OptionalLong arrayMax(long[] numbers) {
+        return Arrays.stream(numbers).max();
+    }
+
+    public static OptionalDouble arrayMax(double[] numbers) {
+        return Arrays.stream(numbers).max();
+    }
+
     /**
      * Returns the minimum value in an array.
      *
@@ -88,6 +154,539 @@ public abstract class Snippets {
         return Arrays.stream(numbers).min();
     }
 
+    public static OptionalLong arrayMin(long[] numbers) {
+        return Arrays.stream(numbers).min();
+    }
+
+    public static OptionalDouble arrayMin(double[] numbers) {
+        return Arrays.stream(numbers).min();
+    }
+
+    /**
+     * Returns the minimum and maximum value of an array as {min, max} in a single pass.
+     * <p>
+     * Elements are taken in pairs: the smaller one of a pair is compared with the minimum and the larger one with
+     * the maximum, which needs 3 comparisons for every 2 elements instead of 4. Arrays of at least
+     * {@code PARALLEL_THRESHOLD} elements are split into blocks that are scanned in parallel.
+     *
+     * @param arr input array
+     * @return {min, max}
+     */
+    public static int[] minMax(int[] arr) {
+        if (arr.length == 0) {
+            throw new IllegalArgumentException("Array is empty");
+        }
+        if (arr.length < PARALLEL_THRESHOLD) {
+            return minMax(arr, 0, arr.length);
+        }
+        return parallelBlocks(arr.length)
+                .mapToObj(from -> minMax(arr, from, Math.min(from + PARALLEL_THRESHOLD, arr.length)))
+                .reduce((a, b) -> new int[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])})
+                .get();
+    }
+
+    private static int[] minMax(int[] arr, int from, int to) {
+        int min = arr[from];
+        int max = min;
+        int i = from + 1;
+        for (; i + 1 < to; i += 2) {
+            int small = arr[i];
+            int large = arr[i + 1];
+            if (small > large) {
+                small = large;
+                large = arr[i];
+            }
+            min = Math.min(min, small);
+            max = Math.max(max, large);
+        }
+        if (i < to) {
+            min = Math.min(min, arr[i]);
+            max = Math.max(max, arr[i]);
+        }
+        return new int[]{min, max};
+    }
+
+    public static long[] minMax(long[] arr) {
+        if (arr.length == 0) {
+            throw new IllegalArgumentException("Array is empty");
+        }
+        if (arr.length < PARALLEL_THRESHOLD) {
+            return minMax(arr, 0, arr.length);
+        }
+        return parallelBlocks(arr.length)
+                .mapToObj(from -> minMax(arr, from, Math.min(from + PARALLEL_THRESHOLD, arr.length)))
+                .reduce((a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])})
+                .get();
+    }
+
+    private static long[] minMax(long[] arr, int from, int to) {
+        long min = arr[from];
+        long max = min;
+        int i = from + 1;
+        for (; i + 1 < to; i += 2) {
+            long small = arr[i];
+            long large = arr[i + 1];
+            if (small > large) {
+                small = large;
+                large = arr[i];
+            }
+            min = Math.min(min, small);
+            max = Math.max(max, large);
+        }
+        if (i < to) {
+            min = Math.min(min, arr[i]);
+            max = Math.max(max, arr[i]);
+        }
+        return new long[]{min, max};
+    }
+
+    public static <T extends Comparable<? super T>> T[] minMax(T[] arr) {
+        return minMax(arr, Comparator.naturalOrder());
+    }
+
+    public static <T> T[] minMax(T[] arr, Comparator<? super T> comparator) {
+        if (arr.length == 0) {
+            throw new IllegalArgumentException("Array is empty");
+        }
+        if (arr.length < PARALLEL_THRESHOLD) {
+            return minMax(arr, 0, arr.length, comparator);
+        }
+        return parallelBlocks(arr.length)
+                .mapToObj(from -> minMax(arr, from, Math.min(from + PARALLEL_THRESHOLD, arr.length), comparator))
+                .reduce((a, b) -> {
+                    a[0] = comparator.compare(b[0], a[0]) < 0 ? b[0] : a[0];
+                    a[1] = comparator.compare(b[1], a[1]) > 0 ? b[1] : a[1];
+                    return a;
+                })
+                .get();
+    }
+
+    private static <T> T[] minMax(T[] arr, int from, int to, Comparator<? super T> comparator) {
+        T min = arr[from];
+        T max = min;
+        int i = from + 1;
+        for (; i + 1 < to; i += 2) {
+            T small = arr[i];
+            T large = arr[i + 1];
+            if (comparator.compare(small, large) > 0) {
+                small = large;
+                large = arr[i];
+            }
+            min = comparator.compare(small, min) < 0 ? small : min;
+            max = comparator.compare(large, max) > 0 ? large : max;
+        }
+        if (i < to) {
+            min = comparator.compare(arr[i], min) < 0 ? arr[i] : min;
+            max = comparator.compare(arr[i], max) > 0 ? arr[i] : max;
+        }
+        T[] result = (T[]) Arrays.copyOf(new Object[0], 2, arr.getClass());
+        result[0] = min;
+        result[1] = max;
+        return result;
+    }
+
+    /**
+     * Start index of every {@code PARALLEL_THRESHOLD} sized block of an array, as a parallel stream.
+     */
+    private static IntStream parallelBlocks(int length) {
+        return IntStream.range(0, (length - 1) / PARALLEL_THRESHOLD + 1)
+                .parallel()
+                .map(block -> block * PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Returns the k largest values of an array in descending order, without sorting the whole array.
+     * <p>
+     * The k largest values seen so far are kept in a min-heap, so most elements cost a single comparison with its
+     * root and the whole call O(n log k). Arrays of at least {@code PARALLEL_THRESHOLD} elements are split into
+     * blocks whose k largest values are selected in parallel, then merged.
+     *
+     * @param arr input array
+     * @param k   number of values to return
+     * @return the min(k, arr.length) largest values, largest first
+     */
+    public static int[] topK(int[] arr, int k) {
+        int[] top = selectK(arr, k, true);
+        Arrays.sort(top);
+        for (int i = 0, j = top.length - 1; i < j; i++, j--) {
+            int tmp = top[i];
+            top[i] = top[j];
+            top[j] = tmp;
+        }
+        return top;
+    }
+
+    /**
+     * Returns the k smallest values of an array in ascending order, see {@link #topK(int[], int)}.
+     *
+     * @param arr input array
+     * @param k   number of values to return
+     * @return the min(k, arr.length) smallest values, smallest first
+     */
+    public static int[] bottomK(int[] arr, int k) {
+        int[] bottom = selectK(arr, k, false);
+        Arrays.sort(bottom);
+        return bottom;
+    }
+
+    private static int[] selectK(int[] arr, int k, boolean largest) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k is less than 0");
+        }
+        if (arr.length < PARALLEL_THRESHOLD) {
+            return selectK(arr, 0, arr.length, k, largest);
+        }
+        int[] candidates = parallelBlocks(arr.length)
+                .mapToObj(from -> selectK(arr, from, Math.min(from + PARALLEL_THRESHOLD, arr.length), k, largest))
+                .flatMapToInt(Arrays::stream)
+                .toArray();
+        return selectK(candidates, 0, candidates.length, k, largest);
+    }
+
+    private static int[] selectK(int[] arr, int from, int to, int k, boolean largest) {
+        int size = Math.min(k, to - from);
+        int[] heap = Arrays.copyOfRange(arr, from, from + size);
+        if (size == 0) {
+            return heap;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, size, largest);
+        }
+        for (int i = from + size; i < to; i++) {
+            if (largest ? arr[i] > heap[0] : arr[i] < heap[0]) {
+                heap[0] = arr[i];
+                siftDown(heap, 0, size, largest);
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Moves heap[i] down until its children belong below it: the root holds the smallest value when selecting the
+     * largest ones, and the other way around.
+     */
+    private static void siftDown(int[] heap, int i, int size, boolean largest) {
+        int value = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < size) {
+            if (child + 1 < size && (largest ? heap[child + 1] < heap[child] : heap[child + 1] > heap[child])) {
+                child++;
+            }
+            if (largest ? heap[child] >= value : heap[child] <= value) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+
+    public static long[] topK(long[] arr, int k) {
+        long[] top = selectK(arr, k, true);
+        Arrays.sort(top);
+        for (int i = 0, j = top.length - 1; i < j; i++, j--) {
+            long tmp = top[i];
+            top[i] = top[j];
+            top[j] = tmp;
+        }
+        return top;
+    }
+
+    public static long[] bottomK(long[] arr, int k) {
+        long[] bottom = selectK(arr, k, false);
+        Arrays.sort(bottom);
+        return bottom;
+    }
+
+    private static long[] selectK(long[] arr, int k, boolean largest) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k is less than 0");
+        }
+        if (arr.length < PARALLEL_THRESHOLD) {
+            return selectK(arr, 0, arr.length, k, largest);
+        }
+        long[] candidates = parallelBlocks(arr.length)
+                .mapToObj(from -> selectK(arr, from, Math.min(from + PARALLEL_THRESHOLD, arr.length), k, largest))
+                .flatMapToLong(Arrays::stream)
+                .toArray();
+        return selectK(candidates, 0, candidates.length, k, largest);
+    }
+
+    private static long[] selectK(long[] arr, int from, int to, int k, boolean largest) {
+        int size = Math.min(k, to - from);
+        long[] heap = Arrays.copyOfRange(arr, from, from + size);
+        if (size == 0) {
+            return heap;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(heap, i, size, largest);
+        }
+        for (int i = from + size; i < to; i++) {
+            if (largest ? arr[i] > heap[0] : arr[i] < heap[0]) {
+                heap[0] = arr[i];
+                siftDown(heap, 0, size, largest);
+            }
+        }
+        return heap;
+    }
+
+    private static void siftDown(long[] heap, int i, int size, boolean largest) {
+        long value = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < size) {
+            if (child + 1 < size && (largest ? heap[child + 1] < heap[child] : heap[child + 1] > heap[child])) {
+                child++;
+            }
+            if (largest ? heap[child] >= value : heap[child] <= value) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = value;
+    }
+
+    /**
+     * Returns the k largest elements of an array according to the comparator, largest first.
+     *
+     * @param arr        input array
+     * @param k          number of elements to return
+     * @param comparator order of the elements
+     * @param <T>        element type
+     * @return the min(k, arr.length) largest elements, largest first
+     */
+    public static <T> T[] topK(T[] arr, int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IllegalArgumentException("k is less than 0");
+        }
+        List<T> top;
+        if (arr.length < PARALLEL_THRESHOLD) {
+            top = selectK(Arrays.asList(arr), k, comparator);
+        } else {
+            List<T> candidates = parallelBlocks(arr.length)
+                    .mapToObj(from -> selectK(Arrays.asList(arr).subList(from, Math.min(from + PARALLEL_THRESHOLD, arr.length)), k, comparator))
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+            top = selectK(candidates, k, comparator);
+        }
+        top.sort(comparator.reversed());
+        return top.toArray((T[]) Arrays.copyOf(new Object[0], 0, arr.getClass()));
+    }
+
+    /**
+     * Returns the k smallest elements of an array according to the comparator, smallest first.
+     *
+     * @param arr        input array
+     * @param k          number of elements to return
+     * @param comparator order of the elements
+     * @param <T>        element type
+     * @return the min(k, arr.length) smallest elements, smallest first
+     */
+    public static <T> T[] bottomK(T[] arr, int k, Comparator<? super T> comparator) {
+        return topK(arr, k, comparator.reversed());
+    }
+
+    private static <T> List<T> selectK(List<T> elements, int k, Comparator<? super T> comparator) {
+        PriorityQueue<T> heap = new PriorityQueue<>(Math.max(1, Math.min(k, elements.size())), comparator);
+        for (T element : elements) {
+            if (heap.size() < k) {
+                heap.add(element);
+            } else if (k > 0 && comparator.compare(element, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(element);
+            }
+        }
+        return new ArrayList<>(heap);
+    }
+
+    /**
+     * Returns the k-th smallest value (counting from 0) of an array, ie. the value at index k once sorted, without
+     * sorting the array. See {@link #kthSmallest(int[], int, boolean)}.
+     *
+     * @param arr input array, left unchanged
+     * @param k   index of the value in sorted order
+     * @return the k-th smallest value
+     */
+    public static int kthSmallest(int[] arr, int k) {
+        return kthSmallest(arr, k, false);
+    }
+
+    /**
+     * Returns the k-th smallest value (counting from 0) of an array with introselect: quickselect around a median
+     * of three pivot, falling back to sorting the remaining range when the partitions keep coming out unbalanced,
+     * so the worst case stays O(n log n) while the expected cost is O(n).
+     * <p>
+     * When {@code inPlace} is true the array itself is partitioned: afterwards arr[k] holds the result, no value
+     * before it is larger and no value after it is smaller. Otherwise a copy is partitioned, and arrays of at least
+     * {@code PARALLEL_THRESHOLD} elements are narrowed down by filtering around the pivot in parallel first.
+     *
+     * @param arr     input array
+     * @param k       index of the value in sorted order
+     * @param inPlace whether to partition {@code arr} itself instead of a copy
+     * @return the k-th smallest value
+     */
+    public static int kthSmallest(int[] arr, int k, boolean inPlace) {
+        if (k < 0 || k >= arr.length) {
+            throw new IndexOutOfBoundsException("k: " + k + ", length: " + arr.length);
+        }
+        int[] candidates = arr;
+        if (!inPlace) {
+            int rounds = selectDepth(arr.length);
+            while (candidates.length >= PARALLEL_THRESHOLD && rounds-- > 0) {
+                int[] range = candidates;
+                int pivot = medianOfThree(range[0], range[range.length >>> 1], range[range.length - 1]);
+                long less = Arrays.stream(range).parallel().filter(x -> x < pivot).count();
+                if (k < less) {
+                    candidates = Arrays.stream(range).parallel().filter(x -> x < pivot).toArray();
+                    continue;
+                }
+                long notGreater = less + Arrays.stream(range).parallel().filter(x -> x == pivot).count();
+                if (k < notGreater) {
+                    return pivot;
+                }
+                k -= notGreater;
+                candidates = Arrays.stream(range).parallel().filter(x -> x > pivot).toArray();
+            }
+            if (candidates == arr) {
+                candidates = arr.clone();
+            }
+        }
+        select(candidates, k);
+        return candidates[k];
+    }
+
+    private static void select(int[] arr, int k) {
+        int lo = 0;
+        int hi = arr.length - 1;
+        int depth = selectDepth(arr.length);
+        while (hi - lo > SELECT_SORT_THRESHOLD) {
+            if (depth-- == 0) {
+                break;
+            }
+            int pivot = medianOfThree(arr[lo], arr[(lo + hi) >>> 1], arr[hi]);
+            // Three-way partition: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                int value = arr[i];
+                if (value < pivot) {
+                    arr[i++] = arr[lt];
+                    arr[lt++] = value;
+                } else if (value > pivot) {
+                    arr[i] = arr[gt];
+                    arr[gt--] = value;
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+        Arrays.sort(arr, lo, hi + 1);
+    }
+
+    private static int medianOfThree(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    public static <T extends Comparable<? super T>> T kthSmallest(T[] arr, int k) {
+        return kthSmallest(arr, k, Comparator.naturalOrder(), false);
+    }
+
+    public static <T> T kthSmallest(T[] arr, int k, Comparator<? super T> comparator, boolean inPlace) {
+        if (k < 0 || k >= arr.length) {
+            throw new IndexOutOfBoundsException("k: " + k + ", length: " + arr.length);
+        }
+        T[] candidates = arr;
+        if (!inPlace) {
+            IntFunction<T[]> newArray = n -> (T[]) Arrays.copyOf(new Object[0], n, arr.getClass());
+            int rounds = selectDepth(arr.length);
+            while (candidates.length >= PARALLEL_THRESHOLD && rounds-- > 0) {
+                T[] range = candidates;
+                T pivot = medianOfThree(range[0], range[range.length >>> 1], range[range.length - 1], comparator);
+                long less = Arrays.stream(range).parallel().filter(x -> comparator.compare(x, pivot) < 0).count();
+                if (k < less) {
+                    candidates = Arrays.stream(range).parallel().filter(x -> comparator.compare(x, pivot) < 0).toArray(newArray);
+                    continue;
+                }
+                long notGreater = less + Arrays.stream(range).parallel().filter(x -> comparator.compare(x, pivot) == 0).count();
+                if (k < notGreater) {
+                    return pivot;
+                }
+                k -= notGreater;
+                candidates = Arrays.stream(range).parallel().filter(x -> comparator.compare(x, pivot) > 0).toArray(newArray);
+            }
+            if (candidates == arr) {
+                candidates = arr.clone();
+            }
+        }
+        select(candidates, k, comparator);
+        return candidates[k];
+    }
+
+    private static <T> void select(T[] arr, int k, Comparator<? super T> comparator) {
+        int lo = 0;
+        int hi = arr.length - 1;
+        int depth = selectDepth(arr.length);
+        while (hi - lo > SELECT_SORT_THRESHOLD) {
+            if (depth-- == 0) {
+                break;
+            }
+            T pivot = medianOfThree(arr[lo], arr[(lo + hi) >>> 1], arr[hi], comparator);
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                T value = arr[i];
+                int cmp = comparator.compare(value, pivot);
+                if (cmp < 0) {
+                    arr[i++] = arr[lt];
+                    arr[lt++] = value;
+                } else if (cmp > 0) {
+                    arr[i] = arr[gt];
+                    arr[gt--] = value;
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+        Arrays.sort(arr, lo, hi + 1, comparator);
+    }
+
+    private static <T> T medianOfThree(T a, T b, T c, Comparator<? super T> comparator) {
+        if (comparator.compare(a, b) > 0) {
+            T tmp = a;
+            a = b;
+            b = tmp;
+        }
+        if (comparator.compare(b, c) <= 0) {
+            return b;
+        }
+        return comparator.compare(a, c) > 0 ? a : c;
+    }
+
+    /**
+     * Number of partition rounds before introselect gives up on quickselect: twice the number of bits in the length.
+     */
+    private static int selectDepth(int length) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(length));
+    }
+
+    private static final int SELECT_SORT_THRESHOLD = 16;
+
     /**
      * Chunks an array into smaller arrays of a specified size.
      *
@@ -102,6 +701,20 @@ public abstract class Snippets {
                 .toArray(int[][]::new);
     }
 
+    public static long[][] chunk(long[] numbers, int size) {
+        return IntStream.iterate(0, i -> i + size)
+                .limit((long) Math.ceil((double) numbers.length / size))
+                .mapToObj(cur -> Arrays.copyOfRange(numbers, cur, cur + size > numbers.length ? numbers.length : cur + size))
+                .toArray(long[][]::new);
+    }
+
+    public static double[][] chunk(double[] numbers, int size) {
+        return IntStream.iterate(0, i -> i + size)
+                .limit((long) Math.ceil((double) numbers.length / size))
+                .mapToObj(cur -> Arrays.copyOfRange(numbers, cur, cur + size > numbers.length ? numbers.length : cur + size))
+                .toArray(double[][]::new);
+    }
+
     /**
      * Counts the occurrences of a value in an array.
      *
@@ -115,20 +728,84 @@ public abstract class Snippets {
                 .count();
     }
 
+    public static long countOccurrences(long[] numbers, long value) {
+        return Arrays.stream(numbers)
+                .filter(number -> number == value)
+                .count();
+    }
+
+    /**
+     * Counts the occurrences of a value in an array. Doubles are compared like {@link Double#equals}, as in every
+     * double[] overload: NaN matches NaN, and 0.0 does not match -0.0.
+     *
+     * @param numbers input array
+     * @param value   value to count
+     * @return number of occurrences
+     */
+    public static long countOccurrences(double[] numbers, double value) {
+        long bits = Double.doubleToLongBits(value);
+        return Arrays.stream(numbers)
+                .filter(number -> Double.doubleToLongBits(number) == bits)
+                .count();
+    }
+
     /**
      * Deep flattens an array.
+     * <p>
+     * Walks the nesting with an explicit stack, so deep inputs can not overflow the call stack. A first pass counts
+     * the values and a second pass copies them into an exactly sized array, using System.arraycopy() for int[] leaves.
      *
-     * @param input A nested array containing integers
+     * @param input A nested array containing integers, int[] or nested Iterables
      * @return flattened array
      */
     public static int[] deepFlatten(Object[] input) {
-        return Arrays.stream(input)
-                .flatMapToInt(o -> {
-                    if (o instanceof Object[]) {
-                        return Arrays.stream(deepFlatten((Object[]) o));
-                    }
-                    return IntStream.of((Integer) o);
-                }).toArray();
+        int[] result = new int[deepFlatten(Arrays.asList(input).iterator(), null)];
+        deepFlatten(Arrays.asList(input).iterator(), result);
+        return result;
+    }
+
+    /**
+     * Deep flattens an Iterable, such as a List, the same way as {@link #deepFlatten(Object[])}.
+     * The Iterable is iterated twice.
+     *
+     * @param input A nested Iterable containing integers, int[], arrays or Iterables
+     * @return flattened array
+     */
+    public static int[] deepFlatten(Iterable<?> input) {
+        int[] result = new int[deepFlatten(input.iterator(), null)];
+        deepFlatten(input.iterator(), result);
+        return result;
+    }
+
+    private static int deepFlatten(Iterator<?> input, int[] target) {
+        int count = 0;
+        Deque<Iterator<?>> stack = new ArrayDeque<>();
+        stack.push(input);
+        while (!stack.isEmpty()) {
+            Iterator<?> iterator = stack.peek();
+            if (!iterator.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Object o = iterator.next();
+            if (o instanceof Object[]) {
+                stack.push(Arrays.asList((Object[]) o).iterator());
+            } else if (o instanceof Iterable) {
+                stack.push(((Iterable<?>) o).iterator());
+            } else if (o instanceof int[]) {
+                int[] leaf = (int[]) o;
+                if (target != null) {
+                    System.arraycopy(leaf, 0, target, count, leaf.length);
+                }
+                count += leaf.length;
+            } else {
+                if (target != null) {
+                    target[count] = (Integer) o;
+                }
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -139,7 +816,51 @@ public abstract class Snippets {
      * @return Elements in first that are not in second
      */
     public static int[] difference(int[] first, int[] second) {
-        Set<Integer> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
+        IntPredicate contains = membership(second);
+        return Arrays.stream(first)
+                .filter(contains.negate())
+                .toArray();
+    }
+
+    private static final int DENSE_BITS_PER_ELEMENT = 32;
+
+    private static boolean isDense(IntSummaryStatistics stats) {
+        long span = (long) stats.getMax() - stats.getMin();
+        // max - min + 1 bits must fit in an int, or the BitSet size and the offsets v - min overflow
+        return stats.getCount() > 0 && span < Integer.MAX_VALUE && span < DENSE_BITS_PER_ELEMENT * stats.getCount();
+    }
+
+    /**
+     * Returns a membership test for the elements. Dense values, whose range is less than 32 bits per element and
+     * fits in an int, are stored in a BitSet offset by their minimum; sparse values are stored in a HashSet.
+     *
+     * @param elements ints
+     * @return predicate that tests if a value is one of the elements
+     */
+    private static IntPredicate membership(int[] elements) {
+        IntSummaryStatistics stats = Arrays.stream(elements).summaryStatistics();
+        if (!isDense(stats)) {
+            Set<Integer> set = Arrays.stream(elements).boxed().collect(Collectors.toSet());
+            return set::contains;
+        }
+        int min = stats.getMin();
+        int max = stats.getMax();
+        BitSet bits = new BitSet(max - min + 1);
+        for (int element : elements) {
+            bits.set(element - min);
+        }
+        return v -> v >= min && v <= max && bits.get(v - min);
+    }
+
+    public static long[] difference(long[] first, long[] second) {
+        Set<Long> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
+        return Arrays.stream(first)
+                .filter(v -> !set.contains(v))
+                .toArray();
+    }
+
+    public static double[] difference(double[] first, double[] second) {
+        Set<Double> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
         return Arrays.stream(first)
                 .filter(v -> !set.contains(v))
                 .toArray();
@@ -168,6 +889,26 @@ public abstract class Snippets {
      * @return distinct values
      */
     public static int[] distinctValuesOfArray(int[] elements) {
+        IntSummaryStatistics stats = Arrays.stream(elements).summaryStatistics();
+        if (!isDense(stats)) {
+            return Arrays.stream(elements).distinct().toArray();
+        }
+        int min = stats.getMin();
+        BitSet seen = new BitSet(stats.getMax() - min + 1);
+        return Arrays.stream(elements)
+                .filter(v -> {
+                    boolean first = !seen.get(v - min);
+                    seen.set(v - min);
+                    return first;
+                })
+                .toArray();
+    }
+
+    public static long[] distinctValuesOfArray(long[] elements) {
+        return Arrays.stream(elements).distinct().toArray();
+    }
+
+    public static double[] distinctValuesOfArray(double[] elements) {
         return Arrays.stream(elements).distinct().toArray();
     }
 
@@ -179,10 +920,11 @@ public abstract class Snippets {
      * @return
      */
     public static int[] dropElements(int[] elements, IntPredicate condition) {
-        while (elements.length > 0 && !condition.test(elements[0])) {
-            elements = Arrays.copyOfRange(elements, 1, elements.length);
+        int from = 0;
+        while (from < elements.length && !condition.test(elements[from])) {
+            from++;
         }
-        return elements;
+        return from == 0 ? elements : Arrays.copyOfRange(elements, from, elements.length);
     }
 
     /**
@@ -215,17 +957,33 @@ public abstract class Snippets {
                 .toArray();
     }
 
+    public static long[] everyNth(long[] elements, int nth) {
+        return IntStream.range(0, elements.length)
+                .filter(i -> i % nth == nth - 1)
+                .mapToLong(i -> elements[i])
+                .toArray();
+    }
+
+    public static double[] everyNth(double[] elements, int nth) {
+        return IntStream.range(0, elements.length)
+                .filter(i -> i % nth == nth - 1)
+                .mapToDouble(i -> elements[i])
+                .toArray();
+    }
+
     /**
      * Filters out the non-unique values in an array.
      * <p>
-     * Use Array.stream().filter() for an array containing only the unique values.
+     * Counts every value once, then uses Array.stream().filter() to keep the values counted exactly once.
      *
      * @param elements input array
      * @return unique values in the array
      */
     public static int[] filterNonUnique(int[] elements) {
+        Map<Integer, Long> counts = Arrays.stream(elements).boxed()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
         return Arrays.stream(elements)
-                .filter(el -> indexOf(elements, el) == lastIndexOf(elements, el))
+                .filter(el -> counts.get(el) == 1)
                 .toArray();
     }
 
@@ -245,6 +1003,25 @@ public abstract class Snippets {
                 .orElse(-1);
     }
 
+    public static int indexOf(long[] elements, long el) {
+        return IntStream.range(0, elements.length)
+                .filter(idx -> elements[idx] == el)
+                .findFirst()
+                .orElse(-1);
+    }
+
+    /**
+     * Finds the first index of a value, comparing like {@link Double#equals}, see
+     * {@link #countOccurrences(double[], double)}.
+     */
+    public static int indexOf(double[] elements, double el) {
+        long bits = Double.doubleToLongBits(el);
+        return IntStream.range(0, elements.length)
+                .filter(idx -> Double.doubleToLongBits(elements[idx]) == bits)
+                .findFirst()
+                .orElse(-1);
+    }
+
     /**
      * Find last index of element in the array. Return -1 in case element does not exist.
      * <p>
@@ -262,42 +1039,291 @@ public abstract class Snippets {
                 .orElse(-1);
     }
 
+    public static int lastIndexOf(long[] elements, long el) {
+        return IntStream.iterate(elements.length - 1, i -> i - 1)
+                .limit(elements.length)
+                .filter(idx -> elements[idx] == el)
+                .findFirst()
+                .orElse(-1);
+    }
+
     /**
-     * Flattens an array.
-     *
-     * @param elements input array
-     * @return flattened array
+     * Finds the last index of a value, comparing like {@link Double#equals}, see
+     * {@link #countOccurrences(double[], double)}.
      */
-    public static int[] flatten(Object[] elements) {
-        return Arrays.stream(elements)
-                .flatMapToInt(el -> el instanceof int[]
-                        ? Arrays.stream((int[]) el)
-                        : IntStream.of((int) el)
-                ).toArray();
+    public static int lastIndexOf(double[] elements, double el) {
+        long bits = Double.doubleToLongBits(el);
+        return IntStream.iterate(elements.length - 1, i -> i - 1)
+                .limit(elements.length)
+                .filter(idx -> Double.doubleToLongBits(elements[idx]) == bits)
+                .findFirst()
+                .orElse(-1);
     }
 
     /**
-     * Flattens an array up to the specified depth.
+     * Indexes the positions of every value in an array, so that repeated {@link #countOccurrences(int[], int)},
+     * {@link #indexOf(int[], int)} and {@link #lastIndexOf(int[], int)} queries on the same array do not scan it
+     * each time. The index is a snapshot: later changes to the array are not reflected.
      *
-     * @param elements input array
-     * @param depth    depth to which to flatten array
-     * @return flattened array
+     * @param arr input array
+     * @return index of the positions of every value
      */
-    public static Object[] flattenDepth(Object[] elements, int depth) {
-        if (depth == 0) {
-            return elements;
-        }
-        return Arrays.stream(elements)
-                .flatMap(el -> el instanceof Object[]
-                        ? Arrays.stream(flattenDepth((Object[]) el, depth - 1))
-                        : Arrays.stream(new Object[]{el})
-                ).toArray();
-
-
+    public static PositionIndex positionIndex(int[] arr) {
+        return new PositionIndex(arr);
     }
 
     /**
-     * Groups the elements of an array based on the given function.
+     * Positions of every value in an int[], built in O(n). count, indexOf and lastIndexOf take O(1) and positions
+     * O(k) for k occurrences.
+     * <p>
+     * Values are mapped to dense ids with an open addressing int to int map. The positions of all values are stored
+     * in one flat int[], grouped by id and ascending within a group, with offsets[id] marking where the group of id
+     * starts. Arrays of at least {@code PARALLEL_THRESHOLD} elements are counted and filled in parallel blocks:
+     * each block counts its own values, the counts are turned into the block's start offset for every value, and
+     * each block then writes its positions into its own slots of the flat array.
+     */
+    public static final class PositionIndex {
+
+        private final IntIntMap ids;
+        private final int[] offsets;
+        private final int[] positions;
+
+        private PositionIndex(int[] arr) {
+            int blockSize = arr.length < PARALLEL_THRESHOLD ? Math.max(arr.length, 1) : PARALLEL_THRESHOLD;
+            IntIntMap[] blocks = new IntIntMap[(arr.length + blockSize - 1) / blockSize];
+            blockRange(blocks.length).forEach(block -> {
+                int from = block * blockSize;
+                int to = Math.min(from + blockSize, arr.length);
+                IntIntMap counts = new IntIntMap(Math.min(to - from, 1 << 10));
+                for (int i = from; i < to; i++) {
+                    counts.getAndAdd(arr[i], 1);
+                }
+                blocks[block] = counts;
+            });
+
+            ids = new IntIntMap(blocks.length == 0 ? 0 : blocks[0].size);
+            int[] counts = new int[ids.keys.length];
+            int distinct = 0;
+            for (IntIntMap block : blocks) {
+                for (int slot = 0; slot < block.keys.length; slot++) {
+                    if (block.filled[slot]) {
+                        int id = ids.get(block.keys[slot]);
+                        if (id < 0) {
+                            id = distinct++;
+                            ids.getAndAdd(block.keys[slot], id);
+                            if (id == counts.length) {
+                                counts = Arrays.copyOf(counts, 2 * counts.length);
+                            }
+                        }
+                        counts[id] += block.values[slot];
+                    }
+                }
+            }
+            offsets = new int[distinct + 1];
+            for (int id = 0; id < distinct; id++) {
+                offsets[id + 1] = offsets[id] + counts[id];
+            }
+
+            // Each block's count becomes the offset at which the block writes its first position of that value
+            int[] next = Arrays.copyOf(offsets, distinct);
+            for (IntIntMap block : blocks) {
+                for (int slot = 0; slot < block.keys.length; slot++) {
+                    if (block.filled[slot]) {
+                        int id = ids.get(block.keys[slot]);
+                        int count = block.values[slot];
+                        block.values[slot] = next[id];
+                        next[id] += count;
+                    }
+                }
+            }
+            positions = new int[arr.length];
+            blockRange(blocks.length).forEach(block -> {
+                IntIntMap cursors = blocks[block];
+                for (int i = block * blockSize, to = Math.min(i + blockSize, arr.length); i < to; i++) {
+                    positions[cursors.getAndAdd(arr[i], 1)] = i;
+                }
+            });
+        }
+
+        private static IntStream blockRange(int blocks) {
+            IntStream range = IntStream.range(0, blocks);
+            return blocks > 1 ? range.parallel() : range;
+        }
+
+        public int count(int value) {
+            int id = ids.get(value);
+            return id < 0 ? 0 : offsets[id + 1] - offsets[id];
+        }
+
+        public int indexOf(int value) {
+            int id = ids.get(value);
+            return id < 0 ? -1 : positions[offsets[id]];
+        }
+
+        public int lastIndexOf(int value) {
+            int id = ids.get(value);
+            return id < 0 ? -1 : positions[offsets[id + 1] - 1];
+        }
+
+        /**
+         * @param value value to find
+         * @return ascending positions of the value, empty if it does not occur
+         */
+        public int[] positions(int value) {
+            int id = ids.get(value);
+            return id < 0 ? new int[0] : Arrays.copyOfRange(positions, offsets[id], offsets[id + 1]);
+        }
+
+        public int distinctCount() {
+            return offsets.length - 1;
+        }
+    }
+
+    /**
+     * Open addressing (linear probing) map from int to a non-negative int, kept at most half full.
+     */
+    private static final class IntIntMap {
+
+        int[] keys;
+        int[] values;
+        boolean[] filled;
+        int size;
+
+        IntIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) * 2;
+            keys = new int[capacity];
+            values = new int[capacity];
+            filled = new boolean[capacity];
+        }
+
+        int get(int key) {
+            int slot = slot(key);
+            return filled[slot] ? values[slot] : -1;
+        }
+
+        /**
+         * Adds delta to the value of key, inserting it with 0 first if absent, and returns the previous value.
+         */
+        int getAndAdd(int key, int delta) {
+            int slot = slot(key);
+            if (!filled[slot]) {
+                if (2 * (size + 1) > keys.length) {
+                    resize();
+                    slot = slot(key);
+                }
+                filled[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            int value = values[slot];
+            values[slot] = value + delta;
+            return value;
+        }
+
+        private int slot(int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int slot = (hash ^ hash >>> 16) & mask;
+            while (filled[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldFilled = filled;
+            keys = new int[2 * oldKeys.length];
+            values = new int[keys.length];
+            filled = new boolean[keys.length];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldFilled[i]) {
+                    int slot = slot(oldKeys[i]);
+                    filled[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Flattens an array.
+     * <p>
+     * Counts the values first, then copies int[] elements into an exactly sized array with System.arraycopy().
+     *
+     * @param elements input array
+     * @return flattened array
+     */
+    public static int[] flatten(Object[] elements) {
+        return flatten(Arrays.asList(elements));
+    }
+
+    public static int[] flatten(Iterable<?> elements) {
+        int count = 0;
+        for (Object el : elements) {
+            count += el instanceof int[] ? ((int[]) el).length : 1;
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (Object el : elements) {
+            if (el instanceof int[]) {
+                int[] values = (int[]) el;
+                System.arraycopy(values, 0, result, i, values.length);
+                i += values.length;
+            } else {
+                result[i++] = (int) el;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Flattens an array up to the specified depth.
+     * <p>
+     * Walks the nesting with an explicit stack of iterators and their depths, counting the elements before copying
+     * them into an exactly sized array.
+     *
+     * @param elements input array
+     * @param depth    depth to which to flatten array, a negative depth flattens it completely
+     * @return flattened array
+     */
+    public static Object[] flattenDepth(Object[] elements, int depth) {
+        if (depth == 0) {
+            return elements;
+        }
+        int maxDepth = depth < 0 ? Integer.MAX_VALUE : depth;
+        Object[] result = new Object[flattenDepth(elements, maxDepth, null)];
+        flattenDepth(elements, maxDepth, result);
+        return result;
+    }
+
+    private static int flattenDepth(Object[] elements, int depth, Object[] target) {
+        int count = 0;
+        Deque<Iterator<Object>> stack = new ArrayDeque<>();
+        stack.push(Arrays.asList(elements).iterator());
+        while (!stack.isEmpty()) {
+            Iterator<Object> iterator = stack.peek();
+            if (!iterator.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            Object el = iterator.next();
+            if (el instanceof Object[] && stack.size() <= depth) {
+                stack.push(Arrays.asList((Object[]) el).iterator());
+            } else {
+                if (target != null) {
+                    target[count] = el;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Groups the elements of an array based on the given function.
      *
      * @param elements input array
      * @param func     function
@@ -336,28 +1362,208 @@ public abstract class Snippets {
     }
 
     public static int[] intersection(int[] first, int[] second) {
-        Set<Integer> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
+        return Arrays.stream(first)
+                .filter(membership(second))
+                .toArray();
+    }
+
+    public static long[] intersection(long[] first, long[] second) {
+        Set<Long> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
+        return Arrays.stream(first)
+                .filter(set::contains)
+                .toArray();
+    }
+
+    public static double[] intersection(double[] first, double[] second) {
+        Set<Double> set = Arrays.stream(second).boxed().collect(Collectors.toSet());
         return Arrays.stream(first)
                 .filter(set::contains)
                 .toArray();
     }
 
+    /**
+     * Returns 1 if the array is sorted in ascending order, -1 if it is sorted in descending order or 0 if it is not
+     * sorted. Arrays with fewer than two distinct values are sorted in ascending order.
+     * <p>
+     * The direction comes from the first pair of different elements. The rest of the array is checked in one pass
+     * that stops at the first pair out of order, in parallel for large arrays.
+     *
+     * @param arr input array
+     * @return direction of the order, or 0 if not sorted
+     */
     public static <T extends Comparable<? super T>> int isSorted(T[] arr) {
-        final int direction = arr[0].compareTo(arr[1]) < 0 ? 1 : -1;
-        for (int i = 0; i < arr.length; i++) {
-            T val = arr[i];
-            if (i == arr.length - 1) return direction;
-            else if ((val.compareTo(arr[i + 1]) * direction > 0)) return 0;
+        return isSorted(arr, Comparator.naturalOrder());
+    }
+
+    public static <T> int isSorted(T[] arr, Comparator<? super T> comparator) {
+        int first = 1;
+        while (first < arr.length && comparator.compare(arr[first - 1], arr[first]) == 0) {
+            first++;
         }
-        return direction;
+        if (first >= arr.length) {
+            return 1;
+        }
+        int direction = comparator.compare(arr[first - 1], arr[first]) < 0 ? 1 : -1;
+        IntStream pairs = IntStream.range(first + 1, arr.length);
+        return (arr.length >= PARALLEL_THRESHOLD ? pairs.parallel() : pairs)
+                .allMatch(i -> comparator.compare(arr[i - 1], arr[i]) * direction <= 0) ? direction : 0;
     }
 
-    public static <T> String join(T[] arr, String separator, String end) {
+    public static int isSorted(int[] arr) {
+        int first = 1;
+        while (first < arr.length && arr[first - 1] == arr[first]) {
+            first++;
+        }
+        if (first >= arr.length) {
+            return 1;
+        }
+        int direction = arr[first - 1] < arr[first] ? 1 : -1;
+        IntStream pairs = IntStream.range(first + 1, arr.length);
+        return (arr.length >= PARALLEL_THRESHOLD ? pairs.parallel() : pairs)
+                .allMatch(i -> Integer.compare(arr[i - 1], arr[i]) * direction <= 0) ? direction : 0;
+    }
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Returns the start index of every ascending (non-decreasing) run in the array.
+     * eg. [1, 2, 0, 5, 5, 3] has runs starting at [0, 2, 5].
+     *
+     * @param arr input array
+     * @return start indexes of the runs
+     */
+    public static int[] sortedRuns(int[] arr) {
         return IntStream.range(0, arr.length)
-                .mapToObj(i -> new SimpleEntry<>(i, arr[i]))
-                .reduce("", (acc, val) -> val.getKey() == arr.length - 2
-                        ? acc + val.getValue() + end
-                        : val.getKey() == arr.length - 1 ? acc + val.getValue() : acc + val.getValue() + separator, (fst, snd) -> fst);
+                .filter(i -> i == 0 || arr[i - 1] > arr[i])
+                .toArray();
+    }
+
+    /**
+     * Returns the distinct values that are in both ascending sorted arrays, by merging them in one linear pass.
+     * When one array is much larger, its position is advanced by galloping (exponential then binary search)
+     * instead of one element at a time.
+     *
+     * @param first  ascending sorted array
+     * @param second ascending sorted array
+     * @return ascending distinct values in both arrays
+     */
+    public static int[] sortedIntersection(int[] first, int[] second) {
+        if (first.length > second.length) {
+            return sortedIntersection(second, first);
+        }
+        boolean gallop = second.length / GALLOP_RATIO > first.length;
+        int[] result = new int[first.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < first.length && j < second.length; i++) {
+            int v = first[i];
+            j = lowerBound(second, j, v, gallop);
+            if (j < second.length && second[j] == v && (n == 0 || result[n - 1] != v)) {
+                result[n++] = v;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Returns the distinct values of the first ascending sorted array that are not in the second, by merging them.
+     *
+     * @param first  ascending sorted array
+     * @param second ascending sorted array
+     * @return ascending distinct values only in first
+     */
+    public static int[] sortedDifference(int[] first, int[] second) {
+        boolean gallop = second.length / GALLOP_RATIO > first.length;
+        int[] result = new int[first.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < first.length; i++) {
+            int v = first[i];
+            j = lowerBound(second, j, v, gallop);
+            if ((j == second.length || second[j] != v) && (n == 0 || result[n - 1] != v)) {
+                result[n++] = v;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public static int[] sortedUnion(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < first.length || j < second.length; ) {
+            int v = j == second.length || i < first.length && first[i] <= second[j] ? first[i++] : second[j++];
+            if (n == 0 || result[n - 1] != v) {
+                result[n++] = v;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    public static int[] sortedSymmetricDifference(int[] first, int[] second) {
+        int[] result = new int[first.length + second.length];
+        int n = 0;
+        for (int i = 0, j = 0; i < first.length || j < second.length; ) {
+            int v;
+            if (j == second.length || i < first.length && first[i] < second[j]) {
+                v = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                v = second[j++];
+            } else {
+                v = first[i];
+                while (i < first.length && first[i] == v) {
+                    i++;
+                }
+                while (j < second.length && second[j] == v) {
+                    j++;
+                }
+                continue;
+            }
+            if (n == 0 || result[n - 1] != v) {
+                result[n++] = v;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    private static final int GALLOP_RATIO = 32;
+
+    /**
+     * Returns the first index from {@code from} whose value is not less than the key.
+     */
+    private static int lowerBound(int[] arr, int from, int key, boolean gallop) {
+        if (!gallop) {
+            while (from < arr.length && arr[from] < key) {
+                from++;
+            }
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        while (low + step < arr.length && arr[low + step] < key) {
+            low += step;
+            step <<= 1;
+        }
+        int high = Math.min(low + step, arr.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (arr[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static <T> String join(T[] arr, String separator, String end) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < arr.length; i++) {
+            sb.append(arr[i]);
+            if (i < arr.length - 2) {
+                sb.append(separator);
+            } else if (i == arr.length - 2) {
+                sb.append(end);
+            }
+        }
+        return sb.toString();
     }
 
     public static <T> String join(T[] arr, String separator) {
@@ -420,8 +1626,9 @@ public abstract class Snippets {
     }
 
     public static <T> T[] similarity(T[] first, T[] second) {
+        Set<T> set = new HashSet<>(Arrays.asList(second));
         return Arrays.stream(first)
-                .filter(a -> Arrays.stream(second).anyMatch(b -> Objects.equals(a, b)))
+                .filter(set::contains)
                 // Make a new array of first's runtime type, but empty content:
                 .toArray(i -> (T[]) Arrays.copyOf(new Object[0], i, first.getClass()));
     }
@@ -470,7 +1677,7 @@ public abstract class Snippets {
     }
 
     public static <T> T[] without(T[] arr, T... elements) {
-        List<T> excludeElements = Arrays.asList(elements);
+        Set<T> excludeElements = new HashSet<>(Arrays.asList(elements));
         return Arrays.stream(arr)
                 .filter(el -> !excludeElements.contains(el))
                 .toArray(i -> (T[]) Arrays.copyOf(new Object[0], i, arr.getClass()));
@@ -492,12 +1699,359 @@ public abstract class Snippets {
                         HashMap::new, (m, v) -> m.put(v.getKey(), v.getValue()), HashMap::putAll);
     }
 
+    /* Lazy streams */
+
+    /**
+     * Lazy {@link #difference(int[], int[])}: the elements of first that are not in second, in order. The lookup of
+     * second is built when the stream's terminal operation starts, and first is streamed, so nothing else is
+     * materialized and short-circuiting operations stop early.
+     *
+     * @param first  the first array
+     * @param second the second array
+     * @return stream of the elements in first that are not in second
+     */
+    public static IntStream differenceStream(int[] first, int[] second) {
+        return lazyIntStream(() -> Arrays.stream(first).filter(membership(second).negate()));
+    }
+
+    /**
+     * Lazy {@link #intersection(int[], int[])}: the elements of first that are in second, in order. When second is
+     * the larger array, the lookup is built from first instead: second is scanned once for the values they share,
+     * and only those are looked up while first is streamed.
+     *
+     * @param first  the first array
+     * @param second the second array
+     * @return stream of the elements in first that are also in second
+     */
+    public static IntStream intersectionStream(int[] first, int[] second) {
+        return lazyIntStream(() -> {
+            if (second.length <= first.length) {
+                return Arrays.stream(first).filter(membership(second));
+            }
+            int[] shared = Arrays.stream(second).filter(membership(first)).toArray();
+            return Arrays.stream(first).filter(membership(shared));
+        });
+    }
+
+    /**
+     * Lazy {@link #similarity(Object[], Object[])}, see {@link #intersectionStream(int[], int[])}.
+     */
+    public static <T> Stream<T> similarityStream(T[] first, T[] second) {
+        return lazyStream(() -> {
+            Set<T> lookup;
+            if (second.length <= first.length) {
+                lookup = new HashSet<>(Arrays.asList(second));
+            } else {
+                Set<T> inFirst = new HashSet<>(Arrays.asList(first));
+                lookup = Arrays.stream(second).filter(inFirst::contains).collect(Collectors.toSet());
+            }
+            return Arrays.stream(first).filter(lookup::contains);
+        });
+    }
+
+    /**
+     * Lazy {@link #without(Object[], Object[])}: the elements of arr that are not one of the given values, in order.
+     */
+    @SafeVarargs
+    public static <T> Stream<T> withoutStream(T[] arr, T... elements) {
+        return lazyStream(() -> {
+            Set<T> excludeElements = new HashSet<>();
+            for (T element : elements) {
+                excludeElements.add(element);
+            }
+            return Arrays.stream(arr).filter(el -> !excludeElements.contains(el));
+        });
+    }
+
+    /**
+     * Lazy {@link #union(Object[], Object[])}: the distinct elements of first, then those of second that were not
+     * in first. Only the elements streamed so far are remembered.
+     */
+    public static <T> Stream<T> unionStream(T[] first, T[] second) {
+        return Stream.concat(Arrays.stream(first), Arrays.stream(second)).distinct();
+    }
+
+    /**
+     * Lazy {@link #symmetricDifference(Object[], Object[])}. The lookup of first is only built once the elements
+     * of first are exhausted and the stream moves on to second.
+     */
+    public static <T> Stream<T> symmetricDifferenceStream(T[] first, T[] second) {
+        return Stream.concat(
+                lazyStream(() -> {
+                    Set<T> sB = new HashSet<>(Arrays.asList(second));
+                    return Arrays.stream(first).filter(a -> !sB.contains(a));
+                }),
+                lazyStream(() -> {
+                    Set<T> sA = new HashSet<>(Arrays.asList(first));
+                    return Arrays.stream(second).filter(b -> !sA.contains(b));
+                }));
+    }
+
+    /**
+     * Defers creating a stream, and so building any lookup it needs, until its terminal operation starts.
+     */
+    private static IntStream lazyIntStream(Supplier<IntStream> stream) {
+        return StreamSupport.intStream(() -> stream.get().spliterator(), Spliterator.ORDERED, false);
+    }
+
+    /**
+     * Like {@link #lazyIntStream}, but also safe to pass to {@link Stream#concat}, which asks both spliterators for
+     * their size up front: the size is reported as unknown until the stream has been created.
+     */
+    private static <T> Stream<T> lazyStream(Supplier<Stream<T>> stream) {
+        return StreamSupport.stream(new LazySpliterator<>(stream), false);
+    }
+
+    private static final class LazySpliterator<T> implements Spliterator<T> {
+        private final Supplier<Stream<T>> stream;
+        private Spliterator<T> delegate;
+
+        private LazySpliterator(Supplier<Stream<T>> stream) {
+            this.stream = stream;
+        }
+
+        private Spliterator<T> delegate() {
+            if (delegate == null) {
+                delegate = stream.get().spliterator();
+            }
+            return delegate;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            return delegate().tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            delegate().forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            return delegate().trySplit();
+        }
+
+        @Override
+        public long estimateSize() {
+            return delegate == null ? Long.MAX_VALUE : delegate.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED;
+        }
+    }
+
+    /* Collectors */
+
+    /**
+     * Counts how many times each element occurs. The collector is concurrent and unordered, so parallel streams
+     * accumulate into one shared map.
+     *
+     * @param <T> element type
+     * @return collector of element counts
+     */
+    public static <T> Collector<T, ?, ConcurrentMap<T, Long>> frequencies() {
+        return Collectors.groupingByConcurrent(Function.identity(), Collectors.counting());
+    }
+
+    public static <T> Collector<T, ?, List<T>> distinctValues() {
+        return Collector.<T, Set<T>, List<T>>of(LinkedHashSet::new, Set::add, (a, b) -> {
+            a.addAll(b);
+            return a;
+        }, ArrayList::new);
+    }
+
+    /**
+     * Splits the elements into chunks of the given size, filling the last chunk as elements arrive instead of
+     * buffering the input. A parallel part that ends mid-chunk has the chunks of the next part refilled behind it.
+     *
+     * @param size chunk size
+     * @param <T>  element type
+     * @return collector of the chunks
+     */
+    public static <T> Collector<T, ?, List<List<T>>> chunk(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size is less than 1");
+        }
+        class Chunks {
+            final List<List<T>> chunks = new ArrayList<>();
+            List<T> last;
+
+            void add(T el) {
+                if (last == null || last.size() == size) {
+                    last = new ArrayList<>(Math.min(size, 16));
+                    chunks.add(last);
+                }
+                last.add(el);
+            }
+
+            Chunks merge(Chunks other) {
+                if (last == null || last.size() == size) {
+                    chunks.addAll(other.chunks);
+                    last = other.last;
+                } else {
+                    other.chunks.forEach(chunk -> chunk.forEach(this::add));
+                }
+                return this;
+            }
+        }
+        return Collector.of(Chunks::new, Chunks::add, Chunks::merge, c -> c.chunks);
+    }
+
+    /**
+     * Keeps every nth element. The whole input is buffered before picking: a part of a parallel stream does not know
+     * its offset in the stream, so it can not tell which of its elements to keep until the parts are merged.
+     *
+     * @param nth  keep each element whose position is a multiple of nth
+     * @param <T>  element type
+     * @return collector of every nth element
+     */
+    public static <T> Collector<T, ?, List<T>> everyNth(int nth) {
+        return Collector.<T, List<T>, List<T>>of(ArrayList::new, List::add, (a, b) -> {
+            a.addAll(b);
+            return a;
+        }, list -> IntStream.range(0, list.size())
+                .filter(i -> i % nth == nth - 1)
+                .mapToObj(list::get)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Keeps only the elements that occur exactly once, in encounter order, like {@link #filterNonUnique(int[])}.
+     *
+     * @param <T> element type
+     * @return collector of unique elements
+     */
+    public static <T> Collector<T, ?, List<T>> filterNonUnique() {
+        return Collector.<T, Map<T, Long>, List<T>>of(LinkedHashMap::new, (m, el) -> m.merge(el, 1L, Long::sum), (a, b) -> {
+            b.forEach((el, count) -> a.merge(el, count, Long::sum));
+            return a;
+        }, m -> m.entrySet().stream()
+                .filter(e -> e.getValue() == 1)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList()));
+    }
+
+    public static <T, K, D> Collector<T, ?, ConcurrentMap<K, D>> groupBy(Function<? super T, ? extends K> func,
+                                                                        Collector<? super T, ?, D> downstream) {
+        return Collectors.groupingByConcurrent(func, downstream);
+    }
+
+    /**
+     * Joins the elements like {@link #join(Object[], String, String)}, with {@code end} before the last element.
+     *
+     * @param separator separator between elements
+     * @param end       separator before the last element
+     * @param <T>       element type
+     * @return collector of the joined string
+     */
+    public static <T> Collector<T, ?, String> join(String separator, String end) {
+        class Joiner {
+            final StringBuilder joined = new StringBuilder();
+            boolean any;
+            String last;
+
+            Joiner add(String value) {
+                flush();
+                last = value;
+                return this;
+            }
+
+            void flush() {
+                if (last != null) {
+                    (any ? joined.append(separator) : joined).append(last);
+                    any = true;
+                }
+            }
+
+            Joiner merge(Joiner other) {
+                if (other.any || other.last != null) {
+                    flush();
+                    if (other.any) {
+                        (any ? joined.append(separator) : joined).append(other.joined);
+                        any = true;
+                    }
+                    last = other.last;
+                }
+                return this;
+            }
+
+            String finish() {
+                return last == null ? joined.toString() : (any ? joined.append(end) : joined).append(last).toString();
+            }
+        }
+        return Collector.of(Joiner::new, (j, el) -> j.add(String.valueOf(el)), Joiner::merge, Joiner::finish);
+    }
+
+    /**
+     * Picks n random elements with reservoir sampling. Reservoirs of parallel parts are merged by drawing from each
+     * in proportion to how many elements it has seen, so every element is equally likely to be picked.
+     *
+     * @param n   number of elements to pick
+     * @param <T> element type
+     * @return collector of the sample
+     */
+    public static <T> Collector<T, ?, List<T>> sampleSize(int n) {
+        class Reservoir {
+            List<T> items = new ArrayList<>();
+            long seen;
+
+            void add(T el) {
+                seen++;
+                if (items.size() < n) {
+                    items.add(el);
+                } else {
+                    long j = ThreadLocalRandom.current().nextLong(seen);
+                    if (j < n) {
+                        items.set((int) j, el);
+                    }
+                }
+            }
+
+            Reservoir merge(Reservoir other) {
+                Collections.shuffle(items, ThreadLocalRandom.current());
+                Collections.shuffle(other.items, ThreadLocalRandom.current());
+                List<T> merged = new ArrayList<>();
+                long left = seen;
+                long right = other.seen;
+                for (int i = 0, j = 0; merged.size() < n && left + right > 0; ) {
+                    if (ThreadLocalRandom.current().nextLong(left + right) < left) {
+                        merged.add(items.get(i++));
+                        left--;
+                    } else {
+                        merged.add(other.items.get(j++));
+                        right--;
+                    }
+                }
+                items = merged;
+                seen += other.seen;
+                return this;
+            }
+        }
+        return Collector.of(Reservoir::new, Reservoir::add, Reservoir::merge, r -> r.items,
+                Collector.Characteristics.UNORDERED);
+    }
+
     public static double average(int[] arr) {
         return IntStream.of(arr)
                 .average()
                 .orElseThrow(() -> new IllegalArgumentException("Array is empty"));
     }
 
+    public static double average(long[] arr) {
+        return Arrays.stream(arr)
+                .average()
+                .orElseThrow(() -> new IllegalArgumentException("Array is empty"));
+    }
+
+    public static double average(double[] arr) {
+        return Arrays.stream(arr)
+                .average()
+                .orElseThrow(() -> new IllegalArgumentException("Array is empty"));
+    }
+
     public static List<String> anagrams(String input) {
         if (input.length() <= 2) {
             return input.length() == 2
@@ -526,28 +2080,74 @@ public abstract class Snippets {
                         : input.substring(1, input.length()));
     }
 
+    private static final Pattern WORD_START = Pattern.compile("\\b(?=\\w)");
+
     public static String capitalizeEveryWord(final String input) {
-        return Pattern.compile("\\b(?=\\w)").splitAsStream(input)
+        return WORD_START.splitAsStream(input)
                 .map(w -> capitalize(w, false))
                 .collect(Collectors.joining());
     }
 
     public static int countVowels(String input) {
-        return input.replaceAll("[^aeiouAEIOU]", "").length();
-    }
-
-    public static String escapeRegExp(String input) {
-        return Pattern.quote(input);
+        int count = 0;
+        for (int i = 0; i < input.length(); i++) {
+            switch (input.charAt(i)) {
+                case 'a': case 'e': case 'i': case 'o': case 'u':
+                case 'A': case 'E': case 'I': case 'O': case 'U':
+                    count++;
+            }
+        }
+        return count;
     }
 
+    /**
+     * Counts how many times each char occurs in the input.
+     * <p>
+     * The histogram is indexed by char value and is only as long as the largest char in the input.
+     *
+     * @param input input chars
+     * @return histogram of char counts
+     */
+    public static int[] charHistogram(CharSequence input) {
+        int max = -1;
+        for (int i = 0; i < input.length(); i++) {
+            max = Math.max(max, input.charAt(i));
+        }
+        int[] histogram = new int[max + 1];
+        for (int i = 0; i < input.length(); i++) {
+            histogram[input.charAt(i)]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * Checks if two strings are anagrams of each other by comparing their char histograms.
+     *
+     * @param first  first string
+     * @param second second string
+     * @return true if both strings contain the same chars the same number of times
+     */
+    public static boolean isAnagram(CharSequence first, CharSequence second) {
+        return first.length() == second.length()
+                && Arrays.equals(charHistogram(first), charHistogram(second));
+    }
+
+    public static String escapeRegExp(String input) {
+        return Pattern.quote(input);
+    }
+
+    private static final Pattern CAMEL_CASE_BOUNDARY = Pattern.compile("([a-z\\d])([A-Z])");
+
     public static String fromCamelCase(String input, String separator) {
-        return input
-                .replaceAll("([a-z\\d])([A-Z])", "$1" + separator + "$2")
+        return CAMEL_CASE_BOUNDARY.matcher(input)
+                .replaceAll("$1" + Matcher.quoteReplacement(separator) + "$2")
                 .toLowerCase();
     }
 
+    private static final Pattern ABSOLUTE_URL = Pattern.compile("^[a-z][a-z0-9+.-]*:");
+
     public static boolean isAbsoluteUrl(String url) {
-        return Pattern.compile("^[a-z][a-z0-9+.-]*:").matcher(url).find();
+        return ABSOLUTE_URL.matcher(url).find();
     }
 
     public static boolean isLowerCase(String input) {
@@ -559,18 +2159,53 @@ public abstract class Snippets {
     }
 
     public static String mask(String input, int num, String mask) {
+        return mask(input, num, mask, new StringBuilder(input.length() * Math.max(mask.length(), 1))).toString();
+    }
+
+    /**
+     * Appends the input to a buffer, replacing all but the last {@code num} code points with the mask.
+     * A negative {@code num} keeps the first {@code -num} code points instead.
+     * <p>
+     * Both bounds are counted in code points and each masked code point is replaced by one copy of the mask, so
+     * surrogate pairs are never split and multi-character masks work. Line terminators are kept, as the regex
+     * {@code .} did not match them. Passing the same buffer lets many fields of a record be redacted without regex.
+     *
+     * @param input the value to mask
+     * @param num   number of code points to leave unmasked
+     * @param mask  the mask to write for each masked code point
+     * @param out   the buffer to append to
+     * @return the buffer
+     */
+    public static StringBuilder mask(CharSequence input, int num, String mask, StringBuilder out) {
         int length = input.length();
-        return num > 0
-                ?
-                input.substring(0, length - num).replaceAll(".", mask)
-                        + input.substring(length - num)
-                :
-                input.substring(0, Math.negateExact(num))
-                        + input.substring(Math.negateExact(num), length).replaceAll(".", mask);
+        int from = num > 0 ? 0 : Character.offsetByCodePoints(input, 0, Math.negateExact(num));
+        int to = num > 0 ? Character.offsetByCodePoints(input, length, -num) : length;
+        int masked = Character.codePointCount(input, from, to);
+        out.ensureCapacity(out.length() + length + masked * mask.length());
+        out.append(input, 0, from);
+        for (int i = from; i < to; ) {
+            int c = Character.codePointAt(input, i);
+            if (isLineTerminator(c)) {
+                out.append((char) c);
+            } else {
+                out.append(mask);
+            }
+            i += Character.charCount(c);
+        }
+        return out.append(input, to, length);
     }
 
+    /**
+     * Line terminators as matched by the regex {@code .}, which mask leaves unmasked.
+     */
+    private static boolean isLineTerminator(int c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[\\W_]");
+
     public static boolean isPalindrome(String input) {
-        String s = input.toLowerCase().replaceAll("[\\W_]", "");
+        String s = NON_ALPHANUMERIC.matcher(input.toLowerCase()).replaceAll("");
         return Objects.equals(
                 s,
                 new StringBuilder(s).reverse().toString()
@@ -581,16 +2216,165 @@ public abstract class Snippets {
         return new StringBuilder(input).reverse().toString();
     }
 
+    /**
+     * Sorts the characters in a string.
+     * <p>
+     * Uses a counting sort when the char range is small compared to the input (always for Latin-1),
+     * and falls back to sorting the char[] otherwise.
+     *
+     * @param input input string
+     * @return string with its chars sorted
+     */
     public static String sortCharactersInString(String input) {
-        return Arrays.stream(input.split("")).sorted().collect(Collectors.joining());
+        char[] chars = input.toCharArray();
+        int max = 0;
+        for (char c : chars) {
+            max = Math.max(max, c);
+        }
+        if (max > 0xFF && max > chars.length) {
+            Arrays.sort(chars);
+            return new String(chars);
+        }
+        int[] histogram = charHistogram(input);
+        for (int c = 0, i = 0; c < histogram.length; c++) {
+            for (int n = histogram[c]; n > 0; n--) {
+                chars[i++] = (char) c;
+            }
+        }
+        return new String(chars);
     }
 
+    private static final Pattern LINE_BREAK = Pattern.compile("\\r?\\n");
+
     public static String[] splitLines(String input) {
-        return input.split("\\r?\\n");
+        return LINE_BREAK.split(input);
+    }
+
+    /**
+     * Iterates over the lines of a {@link Reader}, a {@link CharBuffer} or any {@code CharSequence} wrapped with
+     * {@link CharBuffer#wrap(CharSequence)}, splitting on {@code \\n} and {@code \\r\\n} exactly like
+     * {@link #splitLines}.
+     * <p>
+     * Chars are read into an internal buffer that only grows to hold the longest line, and every line is returned as
+     * the same reusable view over that buffer. A returned line is only valid until the next call to the iterator.
+     *
+     * @param input chars to split
+     * @return iterator over the lines
+     */
+    public static Iterator<CharSequence> lineIterator(Readable input) {
+        return new LineIterator(input);
+    }
+
+    private static final class LineIterator implements Iterator<CharSequence> {
+        private final Readable input;
+        private char[] chars = new char[8192];
+        private CharBuffer line = CharBuffer.wrap(chars);
+        private int start;
+        private int scanned;
+        private int end;
+        private boolean eof;
+        private boolean anyLine;
+        private int emptyLines;
+        private int pendingEmptyLines;
+        private boolean found;
+        private int lineStart;
+        private int lineEnd;
+
+        private LineIterator(Readable input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!found) {
+                findLine();
+            }
+            return found;
+        }
+
+        @Override
+        public CharSequence next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Buffer view = line;
+            if (pendingEmptyLines > 0) {
+                pendingEmptyLines--;
+                view.limit(lineStart);
+                view.position(lineStart);
+            } else {
+                found = false;
+                view.limit(lineEnd);
+                view.position(lineStart);
+            }
+            return line;
+        }
+
+        private void findLine() {
+            while (true) {
+                for (int i = scanned; i < end; i++) {
+                    if (chars[i] == '\n') {
+                        int lineEnd = i > start && chars[i - 1] == '\r' ? i - 1 : i;
+                        int lineStart = start;
+                        start = scanned = i + 1;
+                        if (lineEnd > lineStart) {
+                            found(lineStart, lineEnd);
+                            return;
+                        }
+                        emptyLines++;
+                        anyLine = true;
+                    }
+                }
+                scanned = end;
+                if (eof) {
+                    if (end > start || !anyLine) {
+                        found(start, end);
+                        start = end;
+                    }
+                    return;
+                }
+                fill();
+            }
+        }
+
+        private void found(int lineStart, int lineEnd) {
+            this.lineStart = lineStart;
+            this.lineEnd = lineEnd;
+            pendingEmptyLines = emptyLines;
+            emptyLines = 0;
+            anyLine = true;
+            found = true;
+        }
+
+        private void fill() {
+            System.arraycopy(chars, start, chars, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+            if (end == chars.length) {
+                chars = Arrays.copyOf(chars, chars.length * 2);
+                line = CharBuffer.wrap(chars);
+            }
+            try {
+                // Reader.read(CharBuffer) allocates a temporary char[] per call, so read straight into the array
+                int read = input instanceof Reader
+                        ? ((Reader) input).read(chars, end, chars.length - end)
+                        : input.read(CharBuffer.wrap(chars, end, chars.length - end));
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
+    private static final Pattern WORD_PARTS = Pattern.compile("[A-Z]{2,}(?=[A-Z][a-z]+[0-9]*|\\b)|[A-Z]?[a-z]+[0-9]*|[A-Z]|[0-9]+");
+
     public static String toCamelCase(String input) {
-        Matcher matcher = Pattern.compile("[A-Z]{2,}(?=[A-Z][a-z]+[0-9]*|\\b)|[A-Z]?[a-z]+[0-9]*|[A-Z]|[0-9]+").matcher(input);
+        Matcher matcher = WORD_PARTS.matcher(input);
         List<String> matchedParts = new ArrayList<>();
         while (matcher.find()) {
             matchedParts.add(matcher.group(0));
@@ -602,7 +2386,7 @@ public abstract class Snippets {
     }
 
     public static String toKebabCase(String input) {
-        Matcher matcher = Pattern.compile("[A-Z]{2,}(?=[A-Z][a-z]+[0-9]*|\\b)|[A-Z]?[a-z]+[0-9]*|[A-Z]|[0-9]+").matcher(input);
+        Matcher matcher = WORD_PARTS.matcher(input);
         List<String> matchedParts = new ArrayList<>();
         while (matcher.find()) {
             matchedParts.add(matcher.group(0));
@@ -612,8 +2396,20 @@ public abstract class Snippets {
                 .collect(Collectors.joining("-"));
     }
 
+    /**
+     * Returns all matches of a regular expression in the input. The compiled pattern is taken from a bounded cache,
+     * see {@link #cachedPattern(String)}.
+     *
+     * @param input input string
+     * @param regex regular expression
+     * @return matched parts, in order
+     */
     public static List<String> match(String input, String regex) {
-        Matcher matcher = Pattern.compile(regex).matcher(input);
+        return match(input, cachedPattern(regex));
+    }
+
+    public static List<String> match(String input, Pattern pattern) {
+        Matcher matcher = pattern.matcher(input);
         List<String> matchedParts = new ArrayList<>();
         while (matcher.find()) {
             matchedParts.add(matcher.group(0));
@@ -621,8 +2417,172 @@ public abstract class Snippets {
         return matchedParts;
     }
 
+    private static final BoundedCache<String, Pattern> PATTERN_CACHE = memoize(Pattern::compile, 1024);
+
+    /**
+     * Returns the compiled pattern of a regular expression from a concurrent cache of at most 1024 patterns,
+     * compiling it on a miss. Evictions keep recently used patterns, approximating LRU, see {@link BoundedCache}.
+     *
+     * @param regex regular expression
+     * @return compiled pattern
+     */
+    public static Pattern cachedPattern(String regex) {
+        return PATTERN_CACHE.apply(regex);
+    }
+
+    /**
+     * Builds an Aho-Corasick automaton that finds every occurrence of a set of keywords in one pass over the
+     * input, however many keywords there are.
+     *
+     * @param keywords non-empty keywords to find
+     * @return matcher for the keywords
+     */
+    public static KeywordMatcher keywordMatcher(Collection<String> keywords) {
+        return new KeywordMatcher(keywords);
+    }
+
+    /**
+     * Aho-Corasick multi-literal matcher. The keywords form a trie whose states also have a failure link to the
+     * state of the longest proper suffix of their path that is in the trie, and a dictionary link to the nearest
+     * state along the failure links where a keyword ends. Matching follows one transition, or failure links, per
+     * input char, and reports every keyword ending at that char through the dictionary links, including
+     * overlapping ones.
+     * <p>
+     * The children of each state are kept as a sorted char[] with a parallel int[] of target states and looked up
+     * with a binary search. Instances are immutable and can be shared between threads.
+     */
+    public static final class KeywordMatcher {
+
+        private final String[] keywords;
+        private final char[][] labels;
+        private final int[][] targets;
+        private final int[] failure;
+        private final int[] dictionary;
+        private final int[] output;
+
+        private KeywordMatcher(Collection<String> keywords) {
+            this.keywords = keywords.toArray(new String[0]);
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<Integer> ends = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            ends.add(-1);
+            for (int keyword = 0; keyword < this.keywords.length; keyword++) {
+                String chars = this.keywords[keyword];
+                if (chars.isEmpty()) {
+                    throw new IllegalArgumentException("keywords must not be empty");
+                }
+                int state = 0;
+                for (int i = 0; i < chars.length(); i++) {
+                    Integer next = trie.get(state).get(chars.charAt(i));
+                    if (next == null) {
+                        next = trie.size();
+                        trie.get(state).put(chars.charAt(i), next);
+                        trie.add(new TreeMap<>());
+                        ends.add(-1);
+                    }
+                    state = next;
+                }
+                if (ends.get(state) < 0) {
+                    ends.set(state, keyword);
+                }
+            }
+
+            int states = trie.size();
+            labels = new char[states][];
+            targets = new int[states][];
+            output = new int[states];
+            for (int state = 0; state < states; state++) {
+                TreeMap<Character, Integer> children = trie.get(state);
+                labels[state] = new char[children.size()];
+                targets[state] = new int[children.size()];
+                int i = 0;
+                for (Map.Entry<Character, Integer> child : children.entrySet()) {
+                    labels[state][i] = child.getKey();
+                    targets[state][i++] = child.getValue();
+                }
+                output[state] = ends.get(state);
+            }
+
+            // Breadth first, so the failure target of a state is always linked before the state itself
+            failure = new int[states];
+            dictionary = new int[states];
+            dictionary[0] = -1;
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int child : targets[0]) {
+                dictionary[child] = -1;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < labels[state].length; i++) {
+                    int child = targets[state][i];
+                    int fallback = transition(failure[state], labels[state][i]);
+                    failure[child] = fallback;
+                    dictionary[child] = output[fallback] >= 0 ? fallback : dictionary[fallback];
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        /**
+         * Follows the transition on c from a state, falling back along failure links, to the root at worst.
+         */
+        private int transition(int state, char c) {
+            while (true) {
+                int i = Arrays.binarySearch(labels[state], c);
+                if (i >= 0) {
+                    return targets[state][i];
+                }
+                if (state == 0) {
+                    return 0;
+                }
+                state = failure[state];
+            }
+        }
+
+        /**
+         * Calls the action with every keyword occurrence in the text and its start index, in order of end index.
+         *
+         * @param text   text to search
+         * @param action receives the keyword and its start index
+         */
+        public void forEachMatch(CharSequence text, ObjIntConsumer<String> action) {
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                state = transition(state, text.charAt(i));
+                for (int match = output[state] >= 0 ? state : dictionary[state]; match >= 0; match = dictionary[match]) {
+                    String keyword = keywords[output[match]];
+                    action.accept(keyword, i + 1 - keyword.length());
+                }
+            }
+        }
+
+        /**
+         * @param text text to search
+         * @return every keyword occurrence in the text, in order of end index
+         */
+        public List<String> findAll(CharSequence text) {
+            List<String> matches = new ArrayList<>();
+            forEachMatch(text, (keyword, start) -> matches.add(keyword));
+            return matches;
+        }
+
+        public boolean containsAny(CharSequence text) {
+            int state = 0;
+            for (int i = 0; i < text.length(); i++) {
+                state = transition(state, text.charAt(i));
+                if (output[state] >= 0 || dictionary[state] >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     public static String toSnakeCase(String input) {
-        Matcher matcher = Pattern.compile("[A-Z]{2,}(?=[A-Z][a-z]+[0-9]*|\\b)|[A-Z]?[a-z]+[0-9]*|[A-Z]|[0-9]+").matcher(input);
+        Matcher matcher = WORD_PARTS.matcher(input);
         List<String> matchedParts = new ArrayList<>();
         while (matcher.find()) {
             matchedParts.add(matcher.group(0));
@@ -632,14 +2592,439 @@ public abstract class Snippets {
                 .collect(Collectors.joining("_"));
     }
 
+    /* Batch string APIs */
+
+    /**
+     * Batches of at least this many strings are split across the common fork/join pool by the batch overloads
+     * that do not take a threshold.
+     */
+    public static final int BATCH_PARALLEL_THRESHOLD = 1 << 13;
+
+    private static final ThreadLocal<BatchScratch> BATCH_SCRATCH = ThreadLocal.withInitial(BatchScratch::new);
+
+    /**
+     * Per-thread buffers reused by the batch overloads, so a batch allocates little more than its results. Buffers
+     * are kept up to {@link #MAX_CHARS} chars, so one huge input does not pin its buffer to a pool thread for good.
+     */
+    private static final class BatchScratch {
+        private static final int MAX_CHARS = 1 << 16;
+
+        private char[] chars = new char[64];
+        private StringBuilder builder = new StringBuilder(64);
+        private final Matcher wordParts = WORD_PARTS.matcher("");
+
+        private char[] chars(int length) {
+            if (length > MAX_CHARS) {
+                return new char[length];
+            }
+            if (chars.length < length) {
+                chars = new char[Math.min(Math.max(length, 2 * chars.length), MAX_CHARS)];
+            }
+            return chars;
+        }
+
+        private StringBuilder builder() {
+            builder.setLength(0);
+            return builder;
+        }
+
+        /**
+         * Returns the content of the builder, dropping the builder if it grew past the limit.
+         */
+        private String builderToString() {
+            String s = builder.toString();
+            if (builder.capacity() > MAX_CHARS) {
+                builder = new StringBuilder(64);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Runs the body for every index of a batch, in parallel when the batch has at least parallelThreshold
+     * elements.
+     */
+    private static void batch(int size, int outLength, int parallelThreshold, IntConsumer body) {
+        if (outLength < size) {
+            throw new IllegalArgumentException("Output array is shorter than the input: " + outLength + " < " + size);
+        }
+        IntStream indexes = IntStream.range(0, size);
+        (size >= parallelThreshold ? indexes.parallel() : indexes).forEach(body);
+    }
+
+    private static char toUpperAscii(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    private static char toLowerAscii(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Whether String.toLowerCase() and toUpperCase() map ASCII letters like toLowerAscii and toUpperAscii in the
+     * default locale. They do in every locale but Turkish and Azerbaijani, where I and i have dotless and dotted
+     * case pairs.
+     */
+    private static boolean asciiCaseMappingIsLocaleFree() {
+        String language = Locale.getDefault().getLanguage();
+        return !language.equals("tr") && !language.equals("az");
+    }
+
+    public static void capitalize(List<? extends CharSequence> inputs, boolean lowerRest, String[] out) {
+        capitalize(inputs, lowerRest, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #capitalize(String, boolean)} of every input into out. ASCII inputs are mapped in a per-thread
+     * scratch buffer unless the default locale maps ASCII letters differently; other inputs, including empty ones,
+     * go through the single string version, and so throw like it. Pass a String[] as {@code Arrays.asList(strings)}.
+     *
+     * @param inputs            strings to capitalize
+     * @param lowerRest         whether to lower case all but the first char
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void capitalize(List<? extends CharSequence> inputs, boolean lowerRest, String[] out, int parallelThreshold) {
+        boolean localeFree = asciiCaseMappingIsLocaleFree();
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            CharSequence input = inputs.get(i);
+            int length = input.length();
+            if (length == 0 || !localeFree) {
+                out[i] = capitalize(input.toString(), lowerRest);
+                return;
+            }
+            char[] chars = BATCH_SCRATCH.get().chars(length);
+            for (int j = 0; j < length; j++) {
+                char c = input.charAt(j);
+                if (c >= 0x80) {
+                    out[i] = capitalize(input.toString(), lowerRest);
+                    return;
+                }
+                chars[j] = j == 0 ? toUpperAscii(c) : lowerRest ? toLowerAscii(c) : c;
+            }
+            out[i] = new String(chars, 0, length);
+        });
+    }
+
+    public static void toSnakeCase(List<? extends CharSequence> inputs, String[] out) {
+        toSnakeCase(inputs, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #toSnakeCase(String)} of every input into out, reusing a per-thread matcher and builder. The
+     * matched parts are ASCII and are lower cased in place, unless the default locale maps ASCII letters differently,
+     * in which case every input goes through the single string version.
+     *
+     * @param inputs            strings to convert
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void toSnakeCase(List<? extends CharSequence> inputs, String[] out, int parallelThreshold) {
+        boolean localeFree = asciiCaseMappingIsLocaleFree();
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            CharSequence input = inputs.get(i);
+            if (!localeFree) {
+                out[i] = toSnakeCase(input.toString());
+                return;
+            }
+            BatchScratch scratch = BATCH_SCRATCH.get();
+            Matcher matcher = scratch.wordParts.reset(input);
+            StringBuilder sb = scratch.builder();
+            while (matcher.find()) {
+                if (sb.length() > 0) {
+                    sb.append('_');
+                }
+                for (int j = matcher.start(); j < matcher.end(); j++) {
+                    sb.append(toLowerAscii(input.charAt(j)));
+                }
+            }
+            out[i] = scratch.builderToString();
+        });
+    }
+
+    public static void isPalindrome(List<? extends CharSequence> inputs, boolean[] out) {
+        isPalindrome(inputs, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #isPalindrome(String)} of every input into out. For ASCII inputs, the lower cased letters and
+     * digits are collected in a per-thread scratch buffer and compared from both ends, without building any string.
+     * Other inputs, and every input when the default locale maps ASCII letters differently, go through the single
+     * string version, which lower cases in the default locale.
+     *
+     * @param inputs            strings to check
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void isPalindrome(List<? extends CharSequence> inputs, boolean[] out, int parallelThreshold) {
+        boolean localeFree = asciiCaseMappingIsLocaleFree();
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            CharSequence input = inputs.get(i);
+            if (!localeFree) {
+                out[i] = isPalindrome(input.toString());
+                return;
+            }
+            char[] chars = BATCH_SCRATCH.get().chars(input.length());
+            int n = 0;
+            for (int j = 0; j < input.length(); j++) {
+                char c = input.charAt(j);
+                if (c >= 0x80) {
+                    out[i] = isPalindrome(input.toString());
+                    return;
+                }
+                c = toLowerAscii(c);
+                if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+                    chars[n++] = c;
+                }
+            }
+            boolean palindrome = true;
+            for (int left = 0, right = n - 1; left < right; left++, right--) {
+                if (chars[left] != chars[right]) {
+                    palindrome = false;
+                    break;
+                }
+            }
+            out[i] = palindrome;
+        });
+    }
+
+    public static void mask(List<? extends CharSequence> inputs, int num, String mask, String[] out) {
+        mask(inputs, num, mask, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #mask(String, int, String)} of every input into out, appending into a per-thread builder.
+     *
+     * @param inputs            strings to mask
+     * @param num               number of chars to leave unmasked, at the start if negative
+     * @param mask              replacement for every masked char
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void mask(List<? extends CharSequence> inputs, int num, String mask, String[] out, int parallelThreshold) {
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            BatchScratch scratch = BATCH_SCRATCH.get();
+            mask(inputs.get(i), num, mask, scratch.builder());
+            out[i] = scratch.builderToString();
+        });
+    }
+
+    public static void byteSize(List<? extends CharSequence> inputs, int[] out) {
+        byteSize(inputs, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #byteSize(String)} of every input into out. When the default charset is UTF-8, the encoded
+     * length is counted from the chars without encoding them.
+     *
+     * @param inputs            strings to measure
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void byteSize(List<? extends CharSequence> inputs, int[] out, int parallelThreshold) {
+        boolean utf8 = StandardCharsets.UTF_8.equals(Charset.defaultCharset());
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            CharSequence input = inputs.get(i);
+            out[i] = utf8 ? utf8Length(input) : byteSize(input.toString());
+        });
+    }
+
+    /**
+     * Number of bytes in the UTF-8 encoding of the chars. An unpaired surrogate counts as 1 byte, as String.getBytes
+     * replaces it with '?'.
+     */
+    private static int utf8Length(CharSequence input) {
+        int bytes = 0;
+        for (int j = 0, length = input.length(); j < length; j++) {
+            char c = input.charAt(j);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && j + 1 < length && Character.isLowSurrogate(input.charAt(j + 1))) {
+                bytes += 4;
+                j++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public static void reverseString(List<? extends CharSequence> inputs, String[] out) {
+        reverseString(inputs, out, BATCH_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Writes {@link #reverseString(String)} of every input into out. The chars are reversed into a per-thread
+     * scratch buffer, then surrogate pairs are swapped back into order, as StringBuilder.reverse() does.
+     *
+     * @param inputs            strings to reverse
+     * @param out               receives the result for inputs.get(i) at index i
+     * @param parallelThreshold minimum batch size to split across threads
+     */
+    public static void reverseString(List<? extends CharSequence> inputs, String[] out, int parallelThreshold) {
+        batch(inputs.size(), out.length, parallelThreshold, i -> {
+            CharSequence input = inputs.get(i);
+            int length = input.length();
+            char[] chars = BATCH_SCRATCH.get().chars(length);
+            for (int j = 0; j < length; j++) {
+                chars[length - 1 - j] = input.charAt(j);
+            }
+            for (int j = 0; j + 1 < length; j++) {
+                if (Character.isLowSurrogate(chars[j]) && Character.isHighSurrogate(chars[j + 1])) {
+                    char low = chars[j];
+                    chars[j] = chars[j + 1];
+                    chars[++j] = low;
+                }
+            }
+            out[i] = new String(chars, 0, length);
+        });
+    }
+
+    /**
+     * Wraps a function, such as {@link #toCamelCase}, {@link #toKebabCase} or {@link #toSnakeCase}, in a bounded
+     * concurrent cache. eg. {@code memoize(Snippets::toSnakeCase, 4096)}.
+     *
+     * @param function the function to cache
+     * @param maxSize  maximum number of cached results
+     * @param <K>      input type
+     * @param <V>      result type
+     * @return caching function
+     * @throws IllegalArgumentException if maxSize is less than 1
+     */
+    public static <K, V> BoundedCache<K, V> memoize(Function<? super K, ? extends V> function, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize is less than 1");
+        }
+        return new BoundedCache<>(function, maxSize);
+    }
+
+    /**
+     * A size-bounded cache of function results. Reads are a lock-free {@link ConcurrentHashMap} lookup that marks
+     * the entry as recently used. New keys also take a slot in a ring; once the ring is full, a clock hand that keeps
+     * its position from one insert to the next clears the mark of each used entry it passes and replaces the first
+     * unused one (the CLOCK approximation of LRU). Every entry thus gets a full turn of the hand to be used again, and
+     * an insert costs amortized constant time under the ring's lock.
+     */
+    public static final class BoundedCache<K, V> implements Function<K, V> {
+        private final Function<? super K, ? extends V> function;
+        private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+        private final Object[] ring;
+        private int ringSize;
+        private int hand;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        private BoundedCache(Function<? super K, ? extends V> function, int maxSize) {
+            this.function = function;
+            this.ring = new Object[maxSize];
+        }
+
+        @Override
+        public V apply(K key) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.used) {
+                    entry.used = true;
+                }
+                hits.increment();
+                return entry.value;
+            }
+            misses.increment();
+            V value = function.apply(key);
+            if (entries.putIfAbsent(key, new Entry<>(value)) == null) {
+                admit(key);
+            }
+            return value;
+        }
+
+        /**
+         * Computes and caches the results for known inputs, such as the field names of a schema, without counting
+         * them as hits or misses.
+         *
+         * @param keys inputs to cache
+         */
+        public void precompute(Iterable<? extends K> keys) {
+            for (K key : keys) {
+                if (!entries.containsKey(key) && entries.putIfAbsent(key, new Entry<>(function.apply(key))) == null) {
+                    admit(key);
+                }
+            }
+        }
+
+        public long hitCount() {
+            return hits.sum();
+        }
+
+        public long missCount() {
+            return misses.sum();
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        private synchronized void admit(K key) {
+            if (ringSize < ring.length) {
+                ring[ringSize++] = key;
+                return;
+            }
+            while (true) {
+                Entry<V> entry = entries.get(ring[hand]);
+                if (entry != null && entry.used) {
+                    entry.used = false;
+                    hand = (hand + 1) % ring.length;
+                } else {
+                    entries.remove(ring[hand]);
+                    ring[hand] = key;
+                    hand = (hand + 1) % ring.length;
+                    return;
+                }
+            }
+        }
+
+        private static final class Entry<V> {
+            private final V value;
+            private volatile boolean used;
+
+            private Entry(V value) {
+                this.value = value;
+            }
+        }
+    }
+
     public static String truncateString(String input, int num) {
         return input.length() > num
-                ? input.substring(0, num > 3 ? num - 3 : num) + "..."
+                ? truncateString(input, num, new StringBuilder(num)).toString()
                 : input;
     }
 
+    /**
+     * Appends the input truncated up to the specified length to a buffer, never cutting a surrogate pair in half.
+     *
+     * @param input the value to truncate
+     * @param num   maximum length including the trailing "..."
+     * @param out   the buffer to append to
+     * @return the buffer
+     */
+    public static StringBuilder truncateString(CharSequence input, int num, StringBuilder out) {
+        if (input.length() <= num) {
+            return out.append(input);
+        }
+        int end = num > 3 ? num - 3 : num;
+        if (end > 0 && Character.isHighSurrogate(input.charAt(end - 1)) && Character.isLowSurrogate(input.charAt(end))) {
+            end--;
+        }
+        return out.append(input, 0, end).append("...");
+    }
+
+    private static final Pattern NON_WORD = Pattern.compile("[^a-zA-Z-]+");
+
     public static String[] words(String input) {
-        return Arrays.stream(input.split("[^a-zA-Z-]+"))
+        return Arrays.stream(NON_WORD.split(input))
                 .filter(s -> !s.isEmpty())
                 .toArray(String[]::new);
     }
@@ -660,25 +3045,842 @@ public abstract class Snippets {
         return ThreadLocalRandom.current().ints(total, start, end).toArray();
     }
 
+    public static int[] randomInts(int total, int start, int end, long seed) {
+        return randomInts(new int[total], start, end, seed);
+    }
+
+    /**
+     * Fills an array in parallel with random ints between start (inclusive) and end (exclusive).
+     * <p>
+     * The array is cut into fixed blocks that each get their own {@link SplittableRandom} split from the seed, so
+     * the same seed always gives the same values, however many threads do the work.
+     *
+     * @param target array to fill
+     * @param start  lowest value
+     * @param end    upper bound of the values
+     * @param seed   seed of the random values
+     * @return the filled array
+     */
+    public static int[] randomInts(int[] target, int start, int end, long seed) {
+        SplittableRandom[] randoms = splitRandom(target.length, seed);
+        IntStream.range(0, randoms.length).parallel().forEach(block -> {
+            SplittableRandom random = randoms[block];
+            for (int i = block * RANDOM_BLOCK_SIZE, to = Math.min(i + RANDOM_BLOCK_SIZE, target.length); i < to; i++) {
+                target[i] = random.nextInt(start, end);
+            }
+        });
+        return target;
+    }
+
+    public static IntBuffer randomInts(IntBuffer target, int start, int end, long seed) {
+        int offset = target.position();
+        SplittableRandom[] randoms = splitRandom(target.remaining(), seed);
+        IntStream.range(0, randoms.length).parallel().forEach(block -> {
+            SplittableRandom random = randoms[block];
+            for (int i = block * RANDOM_BLOCK_SIZE, to = Math.min(i + RANDOM_BLOCK_SIZE, target.limit() - offset); i < to; i++) {
+                target.put(offset + i, random.nextInt(start, end));
+            }
+        });
+        return target;
+    }
+
+    public static long[] randomLongs(long[] target, long start, long end, long seed) {
+        SplittableRandom[] randoms = splitRandom(target.length, seed);
+        IntStream.range(0, randoms.length).parallel().forEach(block -> {
+            SplittableRandom random = randoms[block];
+            for (int i = block * RANDOM_BLOCK_SIZE, to = Math.min(i + RANDOM_BLOCK_SIZE, target.length); i < to; i++) {
+                target[i] = random.nextLong(start, end);
+            }
+        });
+        return target;
+    }
+
+    private static final int RANDOM_BLOCK_SIZE = 1 << 16;
+
+    private static SplittableRandom[] splitRandom(int length, long seed) {
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[(length + RANDOM_BLOCK_SIZE - 1) / RANDOM_BLOCK_SIZE];
+        Arrays.setAll(randoms, i -> root.split());
+        return randoms;
+    }
+
     public String readFileAsString(Path path) throws IOException {
         return new String(Files.readAllBytes(path));
     }
 
+    /**
+     * Reads many files as Strings concurrently, returning one future per distinct path in the order given, so a
+     * path listed twice is read once. Every future is complete when this method returns; a file that can not be read
+     * completes its future exceptionally.
+     * <p>
+     * Files are read on virtual threads when the JVM has them (Java 21+) and on a fixed pool of platform threads
+     * otherwise. At most {@code parallelism} files are read at once, and a reader waits while the files being read
+     * would take more than {@code memoryBudget} bytes.
+     *
+     * @param paths        files to read
+     * @param parallelism  maximum number of files read at once
+     * @param memoryBudget maximum number of bytes being read at once
+     * @return file contents by path
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public static Map<Path, CompletableFuture<String>> readFilesAsStrings(Collection<Path> paths, int parallelism,
+                                                                          long memoryBudget) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism is less than 1");
+        }
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            executor = Executors.newFixedThreadPool(parallelism);
+        }
+        int budget = (int) Math.min(Math.max(memoryBudget >> 10, 1), Integer.MAX_VALUE);
+        Semaphore memory = new Semaphore(budget);
+        Semaphore readers = new Semaphore(parallelism);
+        Map<Path, CompletableFuture<String>> results = new LinkedHashMap<>();
+        try {
+            for (Path path : paths) {
+                if (results.containsKey(path)) {
+                    continue;
+                }
+                results.put(path, CompletableFuture.supplyAsync(() -> {
+                    try {
+                        readers.acquire();
+                        try {
+                            int permits = (int) Math.min((Files.size(path) >> 10) + 1, budget);
+                            memory.acquire(permits);
+                            try {
+                                return new String(Files.readAllBytes(path));
+                            } finally {
+                                memory.release(permits);
+                            }
+                        } finally {
+                            readers.release();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(results.values().toArray(new CompletableFuture<?>[0]))
+                    .exceptionally(e -> null)
+                    .join();
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    public static Map<Path, CompletableFuture<String>> readFilesAsStrings(Collection<Path> paths, int parallelism) {
+        return readFilesAsStrings(paths, parallelism, Long.MAX_VALUE);
+    }
+
+    private static final int MAX_ASYNC_READS = 64;
+    private static final int ASYNC_READ_BUFFER_SIZE = 64 * 1024;
+    private static final Queue<ByteBuffer> ASYNC_READ_BUFFERS = new ConcurrentLinkedQueue<>();
+    private static final Queue<Runnable> PENDING_ASYNC_READS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger ASYNC_READS = new AtomicInteger();
+    private static final AtomicBoolean DRAINING_ASYNC_READS = new AtomicBoolean();
+
+    /**
+     * Reads a file as a UTF-8 String without blocking the calling thread.
+     * <p>
+     * The file is read through an {@link AsynchronousFileChannel} in chunks into pooled direct buffers, and every
+     * chunk is decoded as it arrives. At most 64 reads are in flight; later reads are queued until one finishes.
+     * Files are opened on a pool thread, or on the thread of a read that just finished, never on the caller.
+     * Cancelling the returned future closes the channel and stops the read.
+     *
+     * @param path file to read
+     * @return future of the file content
+     */
+    public static CompletableFuture<String> readFileAsStringAsync(Path path) {
+        return readFileAsStringAsync(path, null);
+    }
+
+    /**
+     * Reads like {@link #readFileAsStringAsync(Path)}, running the blocking reads and their completion handlers on the
+     * given executor, or on the default thread pool of {@link AsynchronousFileChannel} when it is null. A read cancelled
+     * while still queued never opens the file.
+     *
+     * @param path     file to read
+     * @param executor executor for the reads, or null
+     * @return future of the file content
+     */
+    public static CompletableFuture<String> readFileAsStringAsync(Path path, ExecutorService executor) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        PENDING_ASYNC_READS.add(() -> {
+            AsynchronousFileChannel channel = null;
+            AsyncFileRead read = null;
+            try {
+                if (!result.isCancelled()) {
+                    channel = AsynchronousFileChannel.open(path, Collections.singleton(StandardOpenOption.READ), executor);
+                    read = new AsyncFileRead(channel, result);
+                }
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            } finally {
+                if (read == null) {
+                    if (channel != null) {
+                        closeQuietly(channel);
+                    }
+                    asyncReadDone();
+                }
+            }
+            if (read != null) {
+                AsynchronousFileChannel opened = channel;
+                result.whenComplete((content, e) -> {
+                    if (result.isCancelled()) {
+                        closeQuietly(opened);
+                    }
+                });
+                read.read();
+            }
+        });
+        if (!DRAINING_ASYNC_READS.get() && ASYNC_READS.get() < MAX_ASYNC_READS) {
+            CompletableFuture.runAsync(Snippets::drainAsyncReads);
+        }
+        return result;
+    }
+
+    /**
+     * Starts queued reads while slots are free. Only one thread drains at a time, so only the drainer takes slots,
+     * and a read that finishes while the drainer runs, even one the drainer itself started, just frees its slot for
+     * the drainer's loop instead of draining recursively. Whoever stops draining checks the queue again, so a slot
+     * freed just before is not missed.
+     */
+    private static void drainAsyncReads() {
+        while (DRAINING_ASYNC_READS.compareAndSet(false, true)) {
+            try {
+                Runnable read;
+                while (ASYNC_READS.get() < MAX_ASYNC_READS && (read = PENDING_ASYNC_READS.poll()) != null) {
+                    ASYNC_READS.incrementAndGet();
+                    read.run();
+                }
+            } finally {
+                DRAINING_ASYNC_READS.set(false);
+            }
+            if (PENDING_ASYNC_READS.isEmpty() || ASYNC_READS.get() >= MAX_ASYNC_READS) {
+                return;
+            }
+        }
+    }
+
+    private static void asyncReadDone() {
+        ASYNC_READS.decrementAndGet();
+        drainAsyncReads();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing left to release
+        }
+    }
+
+    private static final class AsyncFileRead implements CompletionHandler<Integer, Void> {
+        private final AsynchronousFileChannel channel;
+        private final CompletableFuture<String> result;
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes;
+        private final CharBuffer chars = CharBuffer.allocate(ASYNC_READ_BUFFER_SIZE);
+        private final StringBuilder content = new StringBuilder();
+        private long position;
+
+        private AsyncFileRead(AsynchronousFileChannel channel, CompletableFuture<String> result) {
+            this.channel = channel;
+            this.result = result;
+            ByteBuffer pooled = ASYNC_READ_BUFFERS.poll();
+            this.bytes = pooled != null ? pooled : ByteBuffer.allocateDirect(ASYNC_READ_BUFFER_SIZE);
+        }
+
+        private void read() {
+            if (result.isCancelled()) {
+                done();
+            } else {
+                try {
+                    channel.read(bytes, position, null, this);
+                } catch (RuntimeException e) {
+                    failed(e, null);
+                }
+            }
+        }
+
+        @Override
+        public void completed(Integer read, Void attachment) {
+            try {
+                if (read < 0) {
+                    ((Buffer) bytes).flip();
+                    decode(true);
+                    decoder.flush(chars);
+                    ((Buffer) chars).flip();
+                    content.append(chars);
+                    result.complete(content.toString());
+                    done();
+                } else {
+                    position += read;
+                    ((Buffer) bytes).flip();
+                    decode(false);
+                    bytes.compact();
+                    read();
+                }
+            } catch (RuntimeException e) {
+                failed(e, attachment);
+            }
+        }
+
+        @Override
+        public void failed(Throwable e, Void attachment) {
+            result.completeExceptionally(e);
+            done();
+        }
+
+        private void decode(boolean endOfInput) {
+            CoderResult coderResult;
+            do {
+                coderResult = decoder.decode(bytes, chars, endOfInput);
+                ((Buffer) chars).flip();
+                content.append(chars);
+                ((Buffer) chars).clear();
+            } while (coderResult.isOverflow());
+        }
+
+        private void done() {
+            closeQuietly(channel);
+            ((Buffer) bytes).clear();
+            ASYNC_READ_BUFFERS.offer(bytes);
+            asyncReadDone();
+        }
+    }
+
+    /**
+     * Reads whitespace separated numbers from a file into an array of longs.
+     * <p>
+     * The file is cut into one chunk per unit of parallelism, with every cut moved forward to the next whitespace
+     * so that no number is split. Each chunk is memory-mapped and parsed in parallel with {@link #bytesToLongs}.
+     *
+     * @param path        file of ASCII numbers separated by whitespace
+     * @param parallelism number of chunks to parse in parallel
+     * @return array of longs in file order
+     * @throws IOException              if the file can not be read
+     * @throws NumberFormatException    if the file holds an invalid number, with its byte offset in the file
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public static long[] readLongsFromFile(Path path, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = splitFile(channel, parallelism, Snippets::isAsciiWhitespace);
+            long[][] parts;
+            try {
+                parts = IntStream.range(0, bounds.length - 1).parallel()
+                        .mapToObj(i -> bytesToLongs(mapFile(channel, bounds[i], bounds[i + 1]), bounds[i]))
+                        .toArray(long[][]::new);
+            } catch (NumberFormatException e) {
+                // A worker thread's exception is rethrown as a copy without its message, so throw the original
+                throw e.getCause() instanceof NumberFormatException ? (NumberFormatException) e.getCause() : e;
+            }
+            long[] result = new long[Arrays.stream(parts).mapToInt(part -> part.length).sum()];
+            int offset = 0;
+            for (long[] part : parts) {
+                System.arraycopy(part, 0, result, offset, part.length);
+                offset += part.length;
+            }
+            return result;
+        }
+    }
+
+    public static long[] readLongsFromFile(Path path) throws IOException {
+        return readLongsFromFile(path, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Counts the words of a file, using the same {@code [a-zA-Z-]} rule as {@link #words}, and returns the k most
+     * frequent ones from most to least frequent.
+     * <p>
+     * The file is cut into chunks at word boundaries, each chunk is memory-mapped and counted in parallel, and the
+     * per-chunk tables are merged. Words are looked up as byte ranges of the mapped file, so only new words are copied.
+     *
+     * @param path        file to count words in
+     * @param k           number of words to return
+     * @param parallelism number of chunks to count in parallel
+     * @return the k most frequent words with their counts
+     * @throws IOException              if the file can not be read
+     * @throws IllegalArgumentException if parallelism is less than 1
+     */
+    public static Map<String, Long> topWordsInFile(Path path, int k, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = splitFile(channel, parallelism, b -> !isWordByte(b));
+            Map<ByteBuffer, long[]> counts = IntStream.range(0, bounds.length - 1).parallel()
+                    .mapToObj(i -> countWords(mapFile(channel, bounds[i], bounds[i + 1])))
+                    .reduce((a, b) -> {
+                        b.forEach((word, count) -> a.merge(word, count, (x, y) -> {
+                            x[0] += y[0];
+                            return x;
+                        }));
+                        return a;
+                    })
+                    .orElseGet(HashMap::new);
+            Comparator<Map.Entry<ByteBuffer, long[]>> byCount = Comparator
+                    .<Map.Entry<ByteBuffer, long[]>>comparingLong(e -> e.getValue()[0])
+                    .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+            PriorityQueue<Map.Entry<ByteBuffer, long[]>> top = new PriorityQueue<>(byCount);
+            for (Map.Entry<ByteBuffer, long[]> entry : counts.entrySet()) {
+                top.offer(entry);
+                if (top.size() > k) {
+                    top.poll();
+                }
+            }
+            List<Map.Entry<ByteBuffer, long[]>> sorted = new ArrayList<>(top);
+            sorted.sort(byCount.reversed());
+            Map<String, Long> result = new LinkedHashMap<>();
+            for (Map.Entry<ByteBuffer, long[]> entry : sorted) {
+                result.put(new String(entry.getKey().array(), StandardCharsets.US_ASCII), entry.getValue()[0]);
+            }
+            return result;
+        }
+    }
+
+    public static Map<String, Long> topWordsInFile(Path path, int k) throws IOException {
+        return topWordsInFile(path, k, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    private static Map<ByteBuffer, long[]> countWords(ByteBuffer buffer) {
+        Map<ByteBuffer, long[]> counts = new HashMap<>();
+        Buffer probe = buffer.duplicate();
+        int i = buffer.position();
+        int limit = buffer.limit();
+        while (i < limit) {
+            while (i < limit && !isWordByte(buffer.get(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < limit && isWordByte(buffer.get(i))) {
+                i++;
+            }
+            if (i > start) {
+                probe.limit(i);
+                probe.position(start);
+                long[] count = counts.get(probe);
+                if (count != null) {
+                    count[0]++;
+                } else {
+                    byte[] word = new byte[i - start];
+                    ((ByteBuffer) probe).get(word);
+                    counts.put(ByteBuffer.wrap(word), new long[]{1});
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static boolean isWordByte(int b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b == '-';
+    }
+
+    /**
+     * Cuts a file into about {@code parallelism} chunks of at most 1 GB, moving every cut forward to the next
+     * separator byte so that no token is split. Returns the chunk boundaries, from 0 to the file size.
+     */
+    private static long[] splitFile(FileChannel channel, int parallelism, IntPredicate separator) throws IOException {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism is less than 1");
+        }
+        long size = channel.size();
+        long chunkSize = Math.min(Math.max(size / parallelism, 1), Integer.MAX_VALUE / 2);
+        int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+        long[] bounds = new long[chunks + 1];
+        ByteBuffer probe = ByteBuffer.allocate(1);
+        for (int i = 1; i < chunks; i++) {
+            long pos = Math.max(bounds[i - 1], chunkSize * i);
+            while (pos < size && channel.read(probe, pos) == 1 && !separator.test(probe.get(0))) {
+                ((Buffer) probe).clear();
+                pos++;
+            }
+            ((Buffer) probe).clear();
+            bounds[i] = pos;
+        }
+        bounds[chunks] = size;
+        return bounds;
+    }
+
+    private static ByteBuffer mapFile(FileChannel channel, long from, long to) {
+        try {
+            return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static String stackTraceAsString(final Throwable throwable) {
         final StringWriter sw = new StringWriter();
         throwable.printStackTrace(new PrintWriter(sw));
         return sw.toString();
     }
 
+    private static final BoundedCache<StackTraceKey, String> STACK_TRACE_CACHE = memoize(StackTraceKey::render, 1024);
+
+    /**
+     * Converts exception stack trace to a String, keeping at most {@code maxFrames} frames per exception from the
+     * given packages and at most {@code maxChars} chars in total. Suppressed exceptions are left out.
+     * <p>
+     * The rendered frames of each exception in the cause chain are cached by its stack trace in a lock-free
+     * {@link BoundedCache}, so a trace thrown over and over is only filtered and formatted once, whatever its
+     * messages. A limit of three chars or fewer cuts the trace without an ellipsis.
+     *
+     * @param throwable the exception
+     * @param maxFrames maximum number of frames per exception in the cause chain
+     * @param maxChars  maximum length of the result
+     * @param packages  package prefixes of the frames to keep, all frames are kept when none are given
+     * @return the bounded stack trace
+     */
+    public static String stackTraceAsString(Throwable throwable, int maxFrames, int maxChars, String... packages) {
+        try {
+            return appendStackTrace(throwable, maxFrames, maxChars, new StringBuilder(), packages).toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static <A extends Appendable> A appendStackTrace(Throwable throwable, int maxFrames, int maxChars, A out,
+                                                            String... packages) throws IOException {
+        String lineSeparator = System.lineSeparator();
+        BoundedAppender appender = new BoundedAppender(out, maxChars);
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Throwable t = throwable; t != null && seen.add(t) && !appender.full(); t = t.getCause()) {
+            appender.append(t == throwable ? "" : "Caused by: ");
+            appender.append(t.toString());
+            appender.append(lineSeparator);
+            appender.append(STACK_TRACE_CACHE.apply(new StackTraceKey(t.getStackTrace(), maxFrames, packages)));
+        }
+        appender.finish();
+        return out;
+    }
+
+    private static String renderFrames(StackTraceElement[] trace, int maxFrames, String[] packages,
+                                       String lineSeparator) {
+        StringBuilder sb = new StringBuilder();
+        int frames = 0;
+        int omitted = 0;
+        for (StackTraceElement frame : trace) {
+            if (frames < maxFrames && (packages.length == 0
+                    || Arrays.stream(packages).anyMatch(frame.getClassName()::startsWith))) {
+                sb.append("\tat ").append(frame).append(lineSeparator);
+                frames++;
+            } else {
+                omitted++;
+            }
+        }
+        if (omitted > 0) {
+            sb.append("\t... ").append(omitted).append(" more").append(lineSeparator);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends pieces of text to an Appendable, keeping the total within maxChars. Text up to three chars before the
+     * limit is written straight away; the rest is held back until it is known whether everything fits, and is replaced
+     * by "..." if it does not. Limits of three chars or fewer cut the text without an ellipsis.
+     */
+    private static final class BoundedAppender {
+        private final Appendable out;
+        private final int maxChars;
+        private final int safe;
+        private final List<CharSequence> held = new ArrayList<>();
+        private long length;
+
+        private BoundedAppender(Appendable out, int maxChars) {
+            this.out = out;
+            this.maxChars = maxChars;
+            this.safe = maxChars > 3 ? maxChars - 3 : maxChars;
+        }
+
+        private boolean full() {
+            return length > maxChars;
+        }
+
+        private void append(CharSequence piece) throws IOException {
+            if (full()) {
+                return;
+            }
+            if (length >= safe) {
+                held.add(piece);
+            } else if (length + piece.length() <= safe) {
+                out.append(piece);
+            } else {
+                int end = (int) (safe - length);
+                if (end > 0 && Character.isHighSurrogate(piece.charAt(end - 1)) && Character.isLowSurrogate(piece.charAt(end))) {
+                    end--;
+                }
+                out.append(piece, 0, end);
+                held.add(piece.subSequence(end, piece.length()));
+            }
+            length += piece.length();
+        }
+
+        private void finish() throws IOException {
+            if (!full()) {
+                for (CharSequence piece : held) {
+                    out.append(piece);
+                }
+            } else if (maxChars > 3) {
+                out.append("...");
+            }
+        }
+    }
+
+    /**
+     * Cache key of the rendered frames of one stack trace.
+     */
+    private static final class StackTraceKey {
+        private final StackTraceElement[] trace;
+        private final int maxFrames;
+        private final String[] packages;
+
+        private StackTraceKey(StackTraceElement[] trace, int maxFrames, String[] packages) {
+            this.trace = trace;
+            this.maxFrames = maxFrames;
+            this.packages = packages.clone();
+        }
+
+        private String render() {
+            return renderFrames(trace, maxFrames, packages, System.lineSeparator());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StackTraceKey)) {
+                return false;
+            }
+            StackTraceKey other = (StackTraceKey) o;
+            return maxFrames == other.maxFrames && Arrays.equals(trace, other.trace)
+                    && Arrays.equals(packages, other.packages);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * maxFrames + Arrays.hashCode(packages)) + Arrays.hashCode(trace);
+        }
+    }
+
     public static <T> T[] concat(T[] first, T[] second) {
-        return Stream.concat(
-                Stream.of(first),
-                Stream.of(second)
-        ).toArray(i -> (T[]) Arrays.copyOf(new Object[0], i, first.getClass()));
+        T[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    /**
+     * Returns an empty {@link ChunkedArray}, for building an array from batches without copying on every append,
+     * as repeated {@link #concat(Object[], Object[])} calls do.
+     *
+     * @param <T> element type
+     * @return empty chunked array
+     */
+    public static <T> ChunkedArray<T> chunkedArray() {
+        return new ChunkedArray<>();
+    }
+
+    /**
+     * An append-only rope of array chunks. Appending a batch stores a reference to it in O(1) amortized time,
+     * without copying its elements, so the caller must not modify a batch once appended. Random access is a binary
+     * search over the cumulative chunk ends, slicing shares the chunks of the original, and the spliterator splits
+     * by index range for fork/join. Flattening into one array copies every chunk once.
+     * <p>
+     * Not thread-safe for appends; a stream or spliterator sees the elements that were present when it was
+     * created.
+     */
+    public static final class ChunkedArray<T> implements Iterable<T> {
+
+        private Object[][] chunks = new Object[8][];
+        private int[] offsets = new int[8];
+        private int[] ends = new int[8];
+        private int count;
+
+        private ChunkedArray() {
+        }
+
+        public ChunkedArray<T> append(T[] batch) {
+            return append(batch, 0, batch.length);
+        }
+
+        public ChunkedArray<T> append(ChunkedArray<? extends T> other) {
+            int chunkCount = other.count;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                append(other.chunks[chunk], other.offsets[chunk], other.ends[chunk] - other.start(chunk));
+            }
+            return this;
+        }
+
+        private ChunkedArray<T> append(Object[] array, int offset, int length) {
+            if (length == 0) {
+                return this;
+            }
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, 2 * count);
+                offsets = Arrays.copyOf(offsets, 2 * count);
+                ends = Arrays.copyOf(ends, 2 * count);
+            }
+            chunks[count] = array;
+            offsets[count] = offset;
+            ends[count] = Math.addExact(size(), length);
+            count++;
+            return this;
+        }
+
+        public int size() {
+            return count == 0 ? 0 : ends[count - 1];
+        }
+
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            int chunk = chunkOf(index);
+            return (T) chunks[chunk][offsets[chunk] + index - start(chunk)];
+        }
+
+        /**
+         * Returns the elements from (inclusive) to (exclusive) as a new chunked array that shares the chunks of this
+         * one.
+         *
+         * @param from first index
+         * @param to   index after the last one
+         * @return slice of this array
+         */
+        public ChunkedArray<T> slice(int from, int to) {
+            if (from < 0 || to > size() || from > to) {
+                throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", size: " + size());
+            }
+            ChunkedArray<T> slice = new ChunkedArray<>();
+            for (int chunk = from < to ? chunkOf(from) : count; chunk < count && start(chunk) < to; chunk++) {
+                int first = Math.max(from, start(chunk));
+                int last = Math.min(to, ends[chunk]);
+                slice.append(chunks[chunk], offsets[chunk] + first - start(chunk), last - first);
+            }
+            return slice;
+        }
+
+        public T[] toArray(IntFunction<T[]> generator) {
+            T[] result = generator.apply(size());
+            for (int chunk = 0; chunk < count; chunk++) {
+                System.arraycopy(chunks[chunk], offsets[chunk], result, start(chunk), ends[chunk] - start(chunk));
+            }
+            return result;
+        }
+
+        public int[] toIntArray(ToIntFunction<? super T> mapper) {
+            int[] result = new int[size()];
+            int i = 0;
+            for (int chunk = 0; chunk < count; chunk++) {
+                Object[] array = chunks[chunk];
+                for (int j = offsets[chunk], end = j + ends[chunk] - start(chunk); j < end; j++) {
+                    result[i++] = mapper.applyAsInt((T) array[j]);
+                }
+            }
+            return result;
+        }
+
+        public Stream<T> stream() {
+            return StreamSupport.stream(spliterator(), false);
+        }
+
+        public Stream<T> parallelStream() {
+            return StreamSupport.stream(spliterator(), true);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return Spliterators.iterator(spliterator());
+        }
+
+        @Override
+        public Spliterator<T> spliterator() {
+            return new ChunkSpliterator(0, size());
+        }
+
+        private int start(int chunk) {
+            return chunk == 0 ? 0 : ends[chunk - 1];
+        }
+
+        /**
+         * Chunks are never empty, so ends is strictly increasing and the chunk of an index is the first one that
+         * ends after it.
+         */
+        private int chunkOf(int index) {
+            int i = Arrays.binarySearch(ends, 0, count, index);
+            return i >= 0 ? i + 1 : -i - 1;
+        }
+
+        private final class ChunkSpliterator implements Spliterator<T> {
+            private final Object[][] chunks = ChunkedArray.this.chunks;
+            private int index;
+            private final int fence;
+            private int chunk = -1;
+
+            ChunkSpliterator(int index, int fence) {
+                this.index = index;
+                this.fence = fence;
+            }
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (index >= fence) {
+                    return false;
+                }
+                if (chunk < 0) {
+                    chunk = chunkOf(index);
+                } else if (index >= ends[chunk]) {
+                    chunk++;
+                }
+                action.accept((T) chunks[chunk][offsets[chunk] + index - start(chunk)]);
+                index++;
+                return true;
+            }
+
+            @Override
+            public void forEachRemaining(Consumer<? super T> action) {
+                if (index >= fence) {
+                    return;
+                }
+                for (int c = chunk < 0 || index >= ends[chunk] ? chunkOf(index) : chunk; index < fence; c++) {
+                    Object[] array = chunks[c];
+                    int last = Math.min(fence, ends[c]);
+                    for (int j = offsets[c] + index - start(c), end = j + last - index; j < end; j++) {
+                        action.accept((T) array[j]);
+                    }
+                    index = last;
+                }
+            }
+
+            @Override
+            public Spliterator<T> trySplit() {
+                int mid = (index + fence) >>> 1;
+                if (mid <= index) {
+                    return null;
+                }
+                Spliterator<T> prefix = new ChunkSpliterator(index, mid);
+                index = mid;
+                chunk = -1;
+                return prefix;
+            }
+
+            @Override
+            public long estimateSize() {
+                return fence - index;
+            }
+
+            @Override
+            public int characteristics() {
+                return ORDERED | SIZED | SUBSIZED;
+            }
+        }
     }
 
     public static String getCurrentWorkingDirectoryPath() {
-        return FileSystems.getDefault().getPath("").toAbsolutePath().toString();
+        return environment().currentWorkingDirectoryPath();
     }
 
     public static boolean isNumeric(final String input) {
@@ -706,37 +3908,315 @@ public abstract class Snippets {
     }
 
     public static String tmpDirName() {
-        String tmpDirName = System.getProperty("java.io.tmpdir");
-        if (!tmpDirName.endsWith(File.separator)) {
-            tmpDirName += File.separator;
-        }
-
-        return tmpDirName;
+        return environment().tmpDirName();
     }
 
     public static String osName() {
-        return System.getProperty("os.name").toLowerCase();
+        return environment().osName();
     }
 
     public static boolean isDebuggerAttached() {
-        final RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
-        return runtimeMXBean.getInputArguments()
-                .stream()
-                .anyMatch(arg -> arg.contains("-agentlib:jdwp"));
+        return environment().isDebuggerAttached();
+    }
+
+    private static volatile Environment environment;
+
+    /**
+     * Returns the snapshot of the runtime environment, computing it on the first call. Later calls, and so
+     * {@link #osName()}, {@link #tmpDirName()}, {@link #isDebuggerAttached()} and
+     * {@link #getCurrentWorkingDirectoryPath()}, cost a volatile field read.
+     * <p>
+     * Threads racing on the first call may each compute a snapshot; they are equal, and one of them is kept.
+     *
+     * @return environment snapshot
+     */
+    public static Environment environment() {
+        Environment snapshot = environment;
+        return snapshot != null ? snapshot : refreshEnvironment();
+    }
+
+    /**
+     * Computes a new environment snapshot, eg. after changing the {@code java.io.tmpdir} system property, and
+     * returns it.
+     *
+     * @return the new environment snapshot
+     */
+    public static Environment refreshEnvironment() {
+        Environment snapshot = new Environment();
+        environment = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Immutable snapshot of the system properties, JVM arguments and working directory the System snippets read.
+     */
+    public static final class Environment {
+        private final String osName;
+        private final String tmpDirName;
+        private final String currentWorkingDirectoryPath;
+
+        private Environment() {
+            osName = System.getProperty("os.name").toLowerCase();
+            String tmpDir = System.getProperty("java.io.tmpdir");
+            tmpDirName = tmpDir.endsWith(File.separator) ? tmpDir : tmpDir + File.separator;
+            currentWorkingDirectoryPath = FileSystems.getDefault().getPath("").toAbsolutePath().toString();
+        }
+
+        public String osName() {
+            return osName;
+        }
+
+        /**
+         * @return the java.io.tmpdir system property, ending with a separator
+         */
+        public String tmpDirName() {
+            return tmpDirName;
+        }
+
+        public String currentWorkingDirectoryPath() {
+            return currentWorkingDirectoryPath;
+        }
+
+        /**
+         * @return whether the JVM was started with a JDWP agent, read from the JVM input arguments on the first call
+         */
+        public boolean isDebuggerAttached() {
+            return Debugger.ATTACHED;
+        }
+    }
+
+    /**
+     * Holds the debugger flag, so that only callers of {@link #isDebuggerAttached()} pay for starting the management
+     * runtime. The JVM input arguments never change, so it is read once.
+     */
+    private static final class Debugger {
+        private static final boolean ATTACHED = debuggerAttached();
+
+        private static boolean debuggerAttached() {
+            RuntimeMXBean runtimeMXBean = ManagementFactory.getRuntimeMXBean();
+            return runtimeMXBean.getInputArguments()
+                    .stream()
+                    .anyMatch(arg -> arg.contains("-agentlib:jdwp"));
+        }
+    }
+
+    private static volatile boolean instrumentationEnabled;
+    private static final Map<String, LongAdder[]> CALL_STATS = new ConcurrentHashMap<>();
+    private static final int STAT_BUCKETS = 4 * 64;
+
+    public static void enableInstrumentation(boolean enabled) {
+        instrumentationEnabled = enabled;
+    }
+
+    /**
+     * Runs a call and, when instrumentation is enabled, records its input size and latency under the given name.
+     * eg. {@code instrument("anagrams", input.length(), () -> anagrams(input))}.
+     * <p>
+     * When disabled the only overhead is one volatile read. Counters are {@link LongAdder}s, so concurrent callers
+     * do not contend on the same cache line.
+     *
+     * @param name      name to record the call under
+     * @param inputSize size of the input
+     * @param call      the call to run
+     * @param <T>       result type
+     * @return the result of the call
+     */
+    public static <T> T instrument(String name, long inputSize, Supplier<T> call) {
+        if (!instrumentationEnabled) {
+            return call.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            long nanos = System.nanoTime() - start;
+            // computeIfAbsent locks the bin even when the key is present on JDK 8 (JDK-8161372), so look up first
+            LongAdder[] stats = CALL_STATS.get(name);
+            if (stats == null) {
+                stats = CALL_STATS.computeIfAbsent(name, k -> {
+                    LongAdder[] adders = new LongAdder[1 + 2 * STAT_BUCKETS];
+                    Arrays.setAll(adders, i -> new LongAdder());
+                    return adders;
+                });
+            }
+            stats[0].increment();
+            stats[1 + statBucket(inputSize)].increment();
+            stats[1 + STAT_BUCKETS + statBucket(nanos)].increment();
+        }
+    }
+
+    private static int statBucket(long value) {
+        long v = Math.max(value, 1);
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        long fraction = exponent >= 2 ? v >>> (exponent - 2) : v << (2 - exponent);
+        return 4 * exponent + (int) (fraction & 3);
+    }
+
+    /**
+     * Returns the recorded calls by name. Each array holds the call count at index 0, then 256 buckets of input
+     * sizes and 256 buckets of latencies in nanoseconds. Every power of two is split into four linear sub-buckets,
+     * so a bucket is at most 25% wide: index {@code 1 + 4 * i + j} counts inputs of size
+     * {@code [2^i * (1 + j / 4), 2^i * (1 + (j + 1) / 4))} and index {@code 257 + 4 * i + j} calls that took that many
+     * ns. Sizes and latencies below 1 are counted as 1.
+     *
+     * @return call statistics by name
+     */
+    public static Map<String, long[]> instrumentationSnapshot() {
+        return CALL_STATS.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey,
+                        e -> Arrays.stream(e.getValue()).mapToLong(LongAdder::sum).toArray()));
+    }
 
+    public static void resetInstrumentation() {
+        CALL_STATS.clear();
     }
 
     /**
-     * Input a line of numbers separated by space as integers
-     * and return ArrayList of Integers.
-     * eg. the String "1 2 3 4 5 6 7 8 9" is returned as an ArrayList of Integers.
+     * Management view of the {@link #instrument} statistics, see {@link #registerInstrumentationMBean()}.
+     */
+    public interface InstrumentationMXBean {
+
+        Map<String, long[]> getCallStats();
+
+        boolean isEnabled();
+
+        void setEnabled(boolean enabled);
+
+        void reset();
+    }
+
+    /**
+     * Registers the instrumentation statistics with the platform MBean server as {@code snippets:type=Instrumentation},
+     * so they can be read, enabled and reset from JConsole or any other JMX client. Registering twice is a no-op.
+     *
+     * @return the name the MBean is registered under
+     * @throws JMException if the MBean can not be registered
+     */
+    public static synchronized ObjectName registerInstrumentationMBean() throws JMException {
+        ObjectName name = new ObjectName("snippets:type=Instrumentation");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (!server.isRegistered(name)) {
+            server.registerMBean(new StandardMBean(new InstrumentationMXBean() {
+                @Override
+                public Map<String, long[]> getCallStats() {
+                    return instrumentationSnapshot();
+                }
+
+                @Override
+                public boolean isEnabled() {
+                    return instrumentationEnabled;
+                }
+
+                @Override
+                public void setEnabled(boolean enabled) {
+                    enableInstrumentation(enabled);
+                }
+
+                @Override
+                public void reset() {
+                    resetInstrumentation();
+                }
+            }, InstrumentationMXBean.class, true), name);
+        }
+        return name;
+    }
+
+    /**
+     * Input a line of numbers separated by whitespace as integers
+     * and return an array of ints.
+     * eg. the String "1 2 3 4 5 6 7 8 9" is returned as an array of ints.
+     * <p>
+     * Parses the digits in place, without splitting the input into one String per number.
      *
-     * @param numbers range of numbers separated by space as a string
-     * @return ArrayList of Integers
+     * @param numbers range of numbers separated by whitespace
+     * @return array of ints
      */
+    public static int[] stringToIntegers(CharSequence numbers) {
+        int[] result = new int[16];
+        int count = 0;
+        int i = 0;
+        int length = numbers.length();
+        while (true) {
+            while (i < length && Character.isWhitespace(numbers.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                return Arrays.copyOf(result, count);
+            }
+            int start = i;
+            boolean negative = numbers.charAt(i) == '-';
+            if (negative || numbers.charAt(i) == '+') {
+                i++;
+            }
+            long value = 0;
+            while (i < length && !Character.isWhitespace(numbers.charAt(i))) {
+                int digit = Character.digit(numbers.charAt(i++), 10);
+                value = value * 10 - digit;
+                if (digit < 0 || value < Integer.MIN_VALUE) {
+                    throw new NumberFormatException("Invalid number at index " + start);
+                }
+            }
+            if (i == start + 1 && !Character.isDigit(numbers.charAt(start)) || !negative && value == Integer.MIN_VALUE) {
+                throw new NumberFormatException("Invalid number at index " + start);
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = (int) (negative ? value : -value);
+        }
+    }
+
+    /**
+     * Parses whitespace separated ASCII numbers from the remaining bytes of a buffer into an array of longs.
+     *
+     * @param buffer buffer of ASCII numbers separated by whitespace
+     * @return array of longs
+     */
+    public static long[] bytesToLongs(ByteBuffer buffer) {
+        return bytesToLongs(buffer, 0);
+    }
+
+    /**
+     * Parses like {@link #bytesToLongs(ByteBuffer)}, reporting invalid numbers at their buffer index plus
+     * {@code base}, ie. at their offset in the file a mapped buffer was cut from.
+     */
+    private static long[] bytesToLongs(ByteBuffer buffer, long base) {
+        long[] result = new long[16];
+        int count = 0;
+        int i = buffer.position();
+        int limit = buffer.limit();
+        while (true) {
+            while (i < limit && isAsciiWhitespace(buffer.get(i))) {
+                i++;
+            }
+            if (i == limit) {
+                return Arrays.copyOf(result, count);
+            }
+            int start = i;
+            boolean negative = buffer.get(i) == '-';
+            if (negative || buffer.get(i) == '+') {
+                i++;
+            }
+            long value = 0;
+            while (i < limit && !isAsciiWhitespace(buffer.get(i))) {
+                int digit = buffer.get(i++) - '0';
+                if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                    throw new NumberFormatException("Invalid number at byte " + (base + start));
+                }
+                value = value * 10 - digit;
+            }
+            if (i == start + 1 && (negative || buffer.get(start) == '+') || !negative && value == Long.MIN_VALUE) {
+                throw new NumberFormatException("Invalid number at byte " + (base + start));
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, count * 2);
+            }
+            result[count++] = negative ? value : -value;
+        }
+    }
 
-    public static int[] stringToIntegers(String numbers) {
-        return Arrays.stream(numbers.split(" ")).mapToInt(Integer::parseInt).toArray();
+    private static boolean isAsciiWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
     }
 
     /* Class Utilities */
@@ -0,0 +1,125 @@
+package snippets;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when a snippet allocates more bytes per call than its budget, measured with
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)} on fixed inputs after a warm-up.
+ * <p>
+ * Budgets are about twice the bytes measured on a 64-bit HotSpot JVM with compressed oops, so a change that adds
+ * an allocation per element or an extra copy of the input fails, while JIT noise does not. They are measured with
+ * compact strings (Java 9+); Java 8 stores every String in a char[], up to twice the bytes, so there the budgets
+ * are doubled.
+ */
+@RunWith(Parameterized.class)
+public class SnippetsAllocationTests {
+
+    private static final int WARM_UP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 2_000;
+    private static final int BUDGET_FACTOR = System.getProperty("java.specification.version").startsWith("1.") ? 2 : 1;
+
+    private static final String CARD = "4111222233334444";
+    private static final String TEXT = "The quick brown fox jumps over the lazy dog";
+    private static final String NUMBERS = "1 22 333 4444 55555 666666 7777777 88888888";
+    private static final String LINES = "first\nsecond\r\nthird\n";
+    private static final int[] SMALL = IntStream.range(0, 64).toArray();
+    private static final int[] DENSE = IntStream.range(0, 1024).map(i -> i % 512).toArray();
+    private static final int[] SORTED = IntStream.range(0, 1024).toArray();
+    private static final Object[] NESTED = {1, new int[]{2, 3, 4}, new Object[]{5, new Object[]{6, SMALL}}};
+
+    private static volatile Object sink;
+    private static com.sun.management.ThreadMXBean threads;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> snippets() {
+        return Arrays.asList(
+                snippet("mask", 400, () -> Snippets.mask(CARD, 4, "*")),
+                snippet("truncateString", 300, () -> Snippets.truncateString(TEXT, 20)),
+                snippet("sortCharactersInString", 1_500, () -> Snippets.sortCharactersInString(TEXT)),
+                snippet("countVowels", 0, () -> Snippets.countVowels(TEXT)),
+                snippet("isAnagram", 2_000, () -> Snippets.isAnagram("listen", "silent")),
+                snippet("stringToIntegers", 300, () -> Snippets.stringToIntegers(NUMBERS)),
+                snippet("lineIterator", 33_000, () -> {
+                    Iterator<CharSequence> lines = Snippets.lineIterator(new StringReader(LINES));
+                    int length = 0;
+                    while (lines.hasNext()) {
+                        length += lines.next().length();
+                    }
+                    return length;
+                }),
+                snippet("isSorted", 400, () -> Snippets.isSorted(SORTED)),
+                snippet("sortedIntersection", 16_500, () -> Snippets.sortedIntersection(SORTED, SORTED)),
+                snippet("difference", 17_000, () -> Snippets.difference(DENSE, SMALL)),
+                snippet("intersection", 3_500, () -> Snippets.intersection(DENSE, SMALL)),
+                snippet("distinctValuesOfArray", 10_000, () -> Snippets.distinctValuesOfArray(DENSE)),
+                snippet("flatten", 800, () -> Snippets.flatten(new Object[]{1, SMALL, 2})),
+                snippet("deepFlatten", 1_400, () -> Snippets.deepFlatten(NESTED)),
+                snippet("capitalize", 700, () -> Snippets.capitalize(TEXT, true)),
+                snippet("reverseString", 400, () -> Snippets.reverseString(TEXT)),
+                snippet("isPalindrome", 2_700, () -> Snippets.isPalindrome("taco cat")),
+                snippet("toSnakeCase", 10_500, () -> Snippets.toSnakeCase("someFieldName")),
+                snippet("chunk", 1_700, () -> Snippets.chunk(SMALL, 16)),
+                snippet("average", 500, () -> Snippets.average(SMALL)),
+                snippet("instrument", 0, () -> Snippets.instrument("countVowels", TEXT.length(),
+                        () -> Snippets.countVowels(TEXT))),
+                snippet("osName", 0, Snippets::osName),
+                snippet("tmpDirName", 0, Snippets::tmpDirName),
+                snippet("isDebuggerAttached", 0, Snippets::isDebuggerAttached),
+                snippet("getCurrentWorkingDirectoryPath", 0, Snippets::getCurrentWorkingDirectoryPath)
+        );
+    }
+
+    private static Object[] snippet(String name, long budget, Supplier<Object> call) {
+        return new Object[]{name, budget, call};
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private final String name;
+    private final long budget;
+    private final Supplier<Object> call;
+
+    public SnippetsAllocationTests(String name, long budget, Supplier<Object> call) {
+        this.name = name;
+        this.budget = budget;
+        this.call = call;
+    }
+
+    @Test
+    public void allocates_within_budget() throws Exception {
+        for (int i = 0; i < WARM_UP_CALLS; i++) {
+            sink = call.get();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            sink = call.get();
+        }
+        long bytesPerCall = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_CALLS;
+        assertThat(bytesPerCall)
+                .as("bytes allocated per call of %s", name)
+                .isLessThanOrEqualTo(budget * BUDGET_FACTOR);
+    }
+}
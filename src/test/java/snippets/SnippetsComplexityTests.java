@@ -0,0 +1,196 @@
+package snippets;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs each snippet at doubling input sizes and fits the growth exponent of its running time, ie. the slope of
+ * log(time) over log(size). Fails when the fitted exponent is more than {@link #TOLERANCE} away from the declared
+ * one, so an accidentally quadratic snippet declared as linear is caught, and so is a workload that the JIT or a
+ * cache reduced to constant time, which no longer measures what it was declared for.
+ * <p>
+ * The sweep runs twice and only the second pass is fitted, so the JIT has compiled the snippet at every size
+ * before it is timed. Each size is timed as the fastest of a few runs, which filters out GC pauses. A sweep stops
+ * early once a run past the second size takes longer than {@link #MAX_RUN_NANOS}. The fitted exponents are written to
+ * {@code target/complexity-report.txt} (or the path in the {@code complexity.report} system property) so they can
+ * be compared from release to release.
+ * <p>
+ * Timings depend on the machine and its load, so this test is left out of the default build and runs with
+ * {@code mvn test -Pcomplexity}.
+ */
+@RunWith(Parameterized.class)
+public class SnippetsComplexityTests {
+
+    private static final double TOLERANCE = 0.5;
+    private static final int RUNS_PER_SIZE = 5;
+    private static final int SIZES = 5;
+    private static final long MAX_RUN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Map<String, String> REPORT = new TreeMap<>();
+    private static volatile Object sink;
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> snippets() {
+        return Arrays.asList(
+                snippet("filterNonUnique", 1, 1 << 14, n -> {
+                    int[] input = IntStream.range(0, n).map(i -> i % (n / 2)).toArray();
+                    return () -> Snippets.filterNonUnique(input);
+                }),
+                // A scan of an int[] takes microseconds, so start large enough that the timings are not mostly noise.
+                snippet("dropElements", 1, 1 << 18, n -> {
+                    int[] input = IntStream.range(0, n).toArray();
+                    return () -> Snippets.dropElements(input, i -> i == n - 1);
+                }),
+                snippet("join", 1, 1 << 16, n -> {
+                    Integer[] input = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+                    return () -> Snippets.join(input, ", ", " and ");
+                }),
+                // Compares every pair, as an arbitrary comparator gives nothing to hash or sort on.
+                snippet("differenceWith", 2, 1 << 9, n -> {
+                    int[] first = IntStream.range(0, n).toArray();
+                    int[] second = IntStream.range(n, 2 * n).toArray();
+                    return () -> Snippets.differenceWith(first, second, Integer::compare);
+                }),
+                snippet("similarity", 1, 1 << 14, n -> {
+                    Integer[] first = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+                    Integer[] second = IntStream.range(n / 2, n + n / 2).boxed().toArray(Integer[]::new);
+                    return () -> Snippets.similarity(first, second);
+                }),
+                snippet("without", 1, 1 << 14, n -> {
+                    Integer[] input = IntStream.range(0, n).boxed().toArray(Integer[]::new);
+                    Integer[] excluded = IntStream.range(0, n).filter(i -> i % 2 == 0).boxed().toArray(Integer[]::new);
+                    return () -> Snippets.without(input, excluded);
+                }),
+                // The output alone has length! strings, so the size is the number of characters generated and
+                // the sweep adds one character per step instead of doubling.
+                snippet("anagrams", 1, 0, n -> {
+                    String input = "abcdefghij".substring(0, n);
+                    return () -> Snippets.anagrams(input);
+                })
+        );
+    }
+
+    private static Object[] snippet(String name, double exponent, int firstSize, IntFunction<Supplier<Object>> workload) {
+        return new Object[]{name, exponent, firstSize, workload};
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        Path report = Paths.get(System.getProperty("complexity.report", "target/complexity-report.txt"));
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT, "%-20s %8s %8s  %s", "snippet", "declared", "measured", "sizes"));
+        lines.addAll(REPORT.values());
+        Files.write(report, lines, StandardCharsets.UTF_8);
+    }
+
+    private final String name;
+    private final double exponent;
+    private final int firstSize;
+    private final IntFunction<Supplier<Object>> workload;
+
+    public SnippetsComplexityTests(String name, double exponent, int firstSize, IntFunction<Supplier<Object>> workload) {
+        this.name = name;
+        this.exponent = exponent;
+        this.firstSize = firstSize;
+        this.workload = workload;
+    }
+
+    @Test
+    public void scales_within_declared_complexity() {
+        sweep();
+        List<double[]> points = sweep();
+        double measured = growthExponent(points);
+        REPORT.put(name, String.format(Locale.ROOT, "%-20s %8.2f %8.2f  %.0f..%.0f",
+                name, exponent, measured, points.get(0)[0], points.get(points.size() - 1)[0]));
+        assertThat(measured)
+                .as("growth exponent of %s", name)
+                .isBetween(exponent - TOLERANCE, exponent + TOLERANCE);
+    }
+
+    /**
+     * Times the workload at each size, returning the size and the fastest time in nanoseconds of each step.
+     */
+    private List<double[]> sweep() {
+        List<double[]> points = new ArrayList<>();
+        for (int step = 0; step < SIZES; step++) {
+            int n;
+            double size;
+            if (firstSize > 0) {
+                n = firstSize << step;
+                size = n;
+            } else {
+                n = 5 + step;
+                size = n * factorial(n);
+            }
+            long nanos = fastestRun(workload.apply(n));
+            points.add(new double[]{size, nanos});
+            if (step > 0 && nanos > MAX_RUN_NANOS) {
+                break;
+            }
+        }
+        return points;
+    }
+
+    private static long fastestRun(Supplier<Object> call) {
+        long fastest = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS_PER_SIZE; run++) {
+            long start = System.nanoTime();
+            sink = call.get();
+            fastest = Math.min(fastest, System.nanoTime() - start);
+            if (fastest > MAX_RUN_NANOS) {
+                break;
+            }
+        }
+        return Math.max(fastest, 1);
+    }
+
+    /**
+     * Least squares slope of log(time) over log(size).
+     */
+    private static double growthExponent(List<double[]> points) {
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        for (double[] point : points) {
+            double x = Math.log(point[0]);
+            double y = Math.log(point[1]);
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        int count = points.size();
+        return (count * sumXY - sumX * sumY) / (count * sumXX - sumX * sumX);
+    }
+
+    private static double factorial(int n) {
+        double result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+}
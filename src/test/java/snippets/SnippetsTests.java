@@ -1,17 +1,48 @@
 package snippets;
 
+import java.io.File;
+import java.io.StringReader;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.OptionalInt;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import javax.management.JMX;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class SnippetsTests {
 
@@ -92,6 +123,18 @@ public class SnippetsTests {
         assertThat(flatten).isEqualTo(new int[]{1, 2, 3, 4, 5});
     }
 
+    @Test
+    public void deepFlatten_handles_int_arrays_iterables_and_deep_nesting() throws Exception {
+        List<Object> input = Arrays.asList(1, new int[]{2, 3}, Arrays.asList(4, new Object[]{new int[]{5}}), new Object[0]);
+        assertThat(Snippets.deepFlatten(input)).isEqualTo(new int[]{1, 2, 3, 4, 5});
+
+        Object[] deep = {42};
+        for (int i = 0; i < 100_000; i++) {
+            deep = new Object[]{deep};
+        }
+        assertThat(Snippets.deepFlatten(deep)).isEqualTo(new int[]{42});
+    }
+
     @Test
     public void difference_between_array_with_1_2_3_and_array_with_1_2_4_is_3() throws Exception {
         int[] difference = Snippets.difference(new int[]{1, 2, 3}, new int[]{1, 2, 4});
@@ -104,6 +147,63 @@ public class SnippetsTests {
         assertThat(difference).isEmpty();
     }
 
+    @Test
+    public void difference_intersection_and_distinct_agree_for_dense_and_sparse_values() throws Exception {
+        int[] dense = {-3, 5, 5, 0, 2, -3, 7};
+        int[] sparse = {Integer.MIN_VALUE, 5, 5, 0, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        assertThat(Snippets.difference(dense, new int[]{5, 0, 100})).isEqualTo(new int[]{-3, 2, -3, 7});
+        assertThat(Snippets.difference(sparse, new int[]{5, Integer.MAX_VALUE})).isEqualTo(new int[]{Integer.MIN_VALUE, 0, Integer.MIN_VALUE});
+        assertThat(Snippets.intersection(new int[]{7, 1, -3, 8}, dense)).isEqualTo(new int[]{7, -3});
+        assertThat(Snippets.intersection(new int[]{7, 0, Integer.MAX_VALUE}, sparse)).isEqualTo(new int[]{0, Integer.MAX_VALUE});
+        assertThat(Snippets.distinctValuesOfArray(dense)).isEqualTo(new int[]{-3, 5, 0, 2, 7});
+        assertThat(Snippets.distinctValuesOfArray(sparse)).isEqualTo(new int[]{Integer.MIN_VALUE, 5, 0, Integer.MAX_VALUE});
+        assertThat(Snippets.difference(new int[]{1}, new int[0])).isEqualTo(new int[]{1});
+        assertThat(Snippets.distinctValuesOfArray(new int[0])).isEmpty();
+    }
+
+    @Test
+    public void difference_intersection_and_distinct_handle_dense_values_at_int_extremes() throws Exception {
+        int[] low = {Integer.MIN_VALUE + 2, Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MIN_VALUE};
+        int[] high = {Integer.MAX_VALUE, Integer.MAX_VALUE - 2, Integer.MAX_VALUE, Integer.MAX_VALUE - 1};
+        int[] both = {Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE - 1};
+        assertThat(Snippets.difference(both, low)).isEqualTo(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE - 1});
+        assertThat(Snippets.difference(both, high)).isEqualTo(new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE + 1});
+        assertThat(Snippets.intersection(both, high)).isEqualTo(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE - 1});
+        assertThat(Snippets.intersection(both, low)).isEqualTo(new int[]{Integer.MIN_VALUE, Integer.MIN_VALUE + 1});
+        assertThat(Snippets.distinctValuesOfArray(low))
+                .isEqualTo(new int[]{Integer.MIN_VALUE + 2, Integer.MIN_VALUE, Integer.MIN_VALUE + 1});
+        assertThat(Snippets.distinctValuesOfArray(high))
+                .isEqualTo(new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE - 2, Integer.MAX_VALUE - 1});
+        int[] wide = {Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE - 1, Integer.MAX_VALUE, 0};
+        assertThat(Snippets.distinctValuesOfArray(wide))
+                .isEqualTo(new int[]{Integer.MIN_VALUE, -1, 0, Integer.MAX_VALUE - 1, Integer.MAX_VALUE});
+        assertThat(Snippets.difference(wide, new int[]{-1, 0})).isEqualTo(new int[]{Integer.MIN_VALUE, Integer.MAX_VALUE - 1, Integer.MAX_VALUE});
+    }
+
+    @Test
+    public void lazy_set_operation_streams_match_array_versions() throws Exception {
+        int[] small = {3, 1, 4, 1, 5, 9, 2, 6};
+        int[] large = IntStream.range(0, 1_000).map(i -> i * 3).toArray();
+        for (int[][] pair : new int[][][]{{small, large}, {large, small}, {small, small}}) {
+            assertThat(Snippets.differenceStream(pair[0], pair[1]).toArray()).isEqualTo(Snippets.difference(pair[0], pair[1]));
+            assertThat(Snippets.intersectionStream(pair[0], pair[1]).toArray()).isEqualTo(Snippets.intersection(pair[0], pair[1]));
+        }
+        assertThat(Snippets.intersectionStream(large, small).limit(2).toArray()).containsExactly(3, 6);
+
+        Integer[] first = {1, 2, 3, 3, 5};
+        Integer[] second = {3, 4, 5, 6, 7, 8};
+        assertThat(Snippets.similarityStream(first, second).toArray()).isEqualTo(Snippets.similarity(first, second));
+        assertThat(Snippets.similarityStream(second, first).toArray()).isEqualTo(Snippets.similarity(second, first));
+        assertThat(Snippets.withoutStream(first, 2, 3).toArray()).isEqualTo(Snippets.without(first, 2, 3));
+        assertThat(Snippets.unionStream(first, second)).containsExactly(1, 2, 3, 5, 4, 6, 7, 8);
+        assertThat(Snippets.symmetricDifferenceStream(first, second).toArray())
+                .isEqualTo(Snippets.symmetricDifference(first, second));
+        assertThat(Snippets.symmetricDifferenceStream(first, second).findFirst()).contains(1);
+        assertThat(Snippets.withoutStream(first, 2, 3).parallel().toArray()).isEqualTo(Snippets.without(first, 2, 3));
+        assertThat(Snippets.differenceStream(large, small).parallel().sum())
+                .isEqualTo(Arrays.stream(Snippets.difference(large, small)).sum());
+    }
+
     @Test
     public void differenceWith_return_all_squares_that_do_not_exist_in_second() throws Exception {
         int[] difference = Snippets.differenceWith(
@@ -182,6 +282,39 @@ public class SnippetsTests {
         assertThat(elements).isEqualTo(new int[]{2, 4, 6});
     }
 
+    @Test
+    public void positionIndex_answers_count_and_index_queries() throws Exception {
+        int[] arr = {5, -3, 5, Integer.MIN_VALUE, 0, 5, -3};
+        Snippets.PositionIndex index = Snippets.positionIndex(arr);
+        assertThat(index.distinctCount()).isEqualTo(4);
+        assertThat(index.count(5)).isEqualTo(3);
+        assertThat(index.indexOf(5)).isEqualTo(0);
+        assertThat(index.lastIndexOf(5)).isEqualTo(5);
+        assertThat(index.positions(-3)).containsExactly(1, 6);
+        assertThat(index.positions(Integer.MIN_VALUE)).containsExactly(3);
+        assertThat(index.count(42)).isEqualTo(0);
+        assertThat(index.indexOf(42)).isEqualTo(-1);
+        assertThat(index.lastIndexOf(42)).isEqualTo(-1);
+        assertThat(index.positions(42)).isEmpty();
+        assertThat(Snippets.positionIndex(new int[0]).distinctCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void positionIndex_matches_scans_on_large_arrays() throws Exception {
+        for (int bound : new int[]{100, 1_000_000}) {
+            int[] arr = new Random(bound).ints(300_000, -bound, bound).toArray();
+            Snippets.PositionIndex index = Snippets.positionIndex(arr);
+            assertThat(index.distinctCount()).isEqualTo(Snippets.distinctValuesOfArray(arr).length);
+            for (int value : new int[]{arr[0], arr[150_000], arr[299_999], bound}) {
+                assertThat((long) index.count(value)).isEqualTo(Snippets.countOccurrences(arr, value));
+                assertThat(index.indexOf(value)).isEqualTo(Snippets.indexOf(arr, value));
+                assertThat(index.lastIndexOf(value)).isEqualTo(Snippets.lastIndexOf(arr, value));
+                assertThat(index.positions(value))
+                        .isEqualTo(IntStream.range(0, arr.length).filter(i -> arr[i] == value).toArray());
+            }
+        }
+    }
+
     @Test
     public void filterNonUnique_return_unique_elements() throws Exception {
         int[] elements = Snippets.filterNonUnique(new int[]{1, 2, 2, 3, 4, 4, 5});
@@ -204,6 +337,7 @@ public class SnippetsTests {
     public void flatten_flat_one_level_array() throws Exception {
         int[] flatten = Snippets.flatten(new Object[]{1, new int[]{2}, 3, 4});
         assertThat(flatten).isEqualTo(new int[]{1, 2, 3, 4});
+        assertThat(Snippets.flatten(Arrays.asList(new int[]{1, 2}, 3, new int[0]))).isEqualTo(new int[]{1, 2, 3});
     }
 
     @Test
@@ -223,6 +357,9 @@ public class SnippetsTests {
 
         Object[] flatten = Snippets.flattenDepth(input, 2);
         assertThat(flatten).isEqualTo(new Object[]{1, 2, new Object[]{3}, 4, 5});
+        assertThat(Snippets.flattenDepth(input, 1)).isEqualTo(new Object[]{1, 2, new Object[]{new Object[]{3}, 4}, 5});
+        assertThat(Snippets.flattenDepth(input, 10)).isEqualTo(new Object[]{1, 2, 3, 4, 5});
+        assertThat(Snippets.flattenDepth(input, -1)).isEqualTo(new Object[]{1, 2, 3, 4, 5});
     }
 
     @Test
@@ -259,6 +396,80 @@ public class SnippetsTests {
         assertThat(elements).isEqualTo(new int[]{2, 3});
     }
 
+    @Test
+    public void minMax_returns_min_and_max_in_one_pass() throws Exception {
+        assertThat(Snippets.minMax(new int[]{7})).containsExactly(7, 7);
+        assertThat(Snippets.minMax(new int[]{3, -1})).containsExactly(-1, 3);
+        assertThat(Snippets.minMax(new int[]{4, 9, -2, 5, 0})).containsExactly(-2, 9);
+        assertThat(Snippets.minMax(new long[]{4L, Long.MAX_VALUE, Long.MIN_VALUE, 5L})).containsExactly(Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(Snippets.minMax(new String[]{"pear", "apple", "plum"})).containsExactly("apple", "plum");
+        assertThat(Snippets.minMax(new String[]{"pear", "fig", "banana"}, Comparator.comparingInt(String::length))).containsExactly("fig", "banana");
+        assertThatThrownBy(() -> Snippets.minMax(new int[0])).isInstanceOf(IllegalArgumentException.class);
+
+        int[] large = new Random(42).ints(200_001).toArray();
+        assertThat(Snippets.minMax(large)).containsExactly(Snippets.arrayMin(large).getAsInt(), Snippets.arrayMax(large).getAsInt());
+        Integer[] boxed = Arrays.stream(large).boxed().toArray(Integer[]::new);
+        assertThat(Snippets.minMax(boxed)).containsExactly(Snippets.arrayMin(large).getAsInt(), Snippets.arrayMax(large).getAsInt());
+    }
+
+    @Test
+    public void topK_and_bottomK_match_sorting() throws Exception {
+        assertThat(Snippets.topK(new int[]{5, 1, 9, 3, 9, 7}, 3)).containsExactly(9, 9, 7);
+        assertThat(Snippets.bottomK(new int[]{5, 1, 9, 3, 9, 7}, 2)).containsExactly(1, 3);
+        assertThat(Snippets.topK(new int[]{2, 1}, 5)).containsExactly(2, 1);
+        assertThat(Snippets.topK(new int[]{2, 1}, 0)).isEmpty();
+        assertThat(Snippets.bottomK(new long[]{5L, -8L, 3L}, 2)).containsExactly(-8L, 3L);
+        assertThat(Snippets.topK(new String[]{"b", "d", "a", "c"}, 2, Comparator.naturalOrder())).containsExactly("d", "c");
+        assertThat(Snippets.bottomK(new String[]{"b", "d", "a", "c"}, 2, Comparator.naturalOrder())).containsExactly("a", "b");
+        assertThatThrownBy(() -> Snippets.topK(new int[]{1}, -1)).isInstanceOf(IllegalArgumentException.class);
+
+        int[] large = new Random(7).ints(300_000, 0, 50_000).toArray();
+        int[] sorted = large.clone();
+        Arrays.sort(sorted);
+        assertThat(Snippets.bottomK(large, 100)).isEqualTo(Arrays.copyOf(sorted, 100));
+        int[] top = Snippets.topK(large, 100);
+        for (int i = 0; i < top.length; i++) {
+            assertThat(top[i]).isEqualTo(sorted[sorted.length - 1 - i]);
+        }
+        long[] largeLongs = Arrays.stream(large).asLongStream().toArray();
+        assertThat(Snippets.topK(largeLongs, 1)).containsExactly(sorted[sorted.length - 1]);
+        Integer[] boxed = Arrays.stream(large).boxed().toArray(Integer[]::new);
+        assertThat(Snippets.bottomK(boxed, 100, Comparator.naturalOrder()))
+                .isEqualTo(Arrays.stream(sorted, 0, 100).boxed().toArray(Integer[]::new));
+    }
+
+    @Test
+    public void kthSmallest_matches_sorting() throws Exception {
+        int[] arr = {9, 4, 7, 1, 8, 2, 2, 6, 3, 5, 0, 7, 4, 1, 9, 3, 8, 6, 5, 2};
+        int[] sorted = arr.clone();
+        Arrays.sort(sorted);
+        for (int k = 0; k < arr.length; k++) {
+            assertThat(Snippets.kthSmallest(arr, k)).isEqualTo(sorted[k]);
+        }
+        assertThat(arr).isNotEqualTo(sorted);
+
+        int[] partitioned = arr.clone();
+        int median = Snippets.kthSmallest(partitioned, 10, true);
+        assertThat(median).isEqualTo(sorted[10]);
+        assertThat(Arrays.stream(partitioned, 0, 10).allMatch(x -> x <= median)).isTrue();
+        assertThat(Arrays.stream(partitioned, 11, partitioned.length).allMatch(x -> x >= median)).isTrue();
+
+        assertThat(Snippets.kthSmallest(new String[]{"c", "a", "b"}, 1)).isEqualTo("b");
+        assertThatThrownBy(() -> Snippets.kthSmallest(new int[]{1}, 1)).isInstanceOf(IndexOutOfBoundsException.class);
+
+        int[] large = new Random(3).ints(250_000, 0, 1_000).toArray();
+        int[] largeSorted = large.clone();
+        Arrays.sort(largeSorted);
+        Integer[] boxed = Arrays.stream(large).boxed().toArray(Integer[]::new);
+        for (int k : new int[]{0, 1_234, 125_000, 249_999}) {
+            assertThat(Snippets.kthSmallest(large, k)).isEqualTo(largeSorted[k]);
+            assertThat(Snippets.kthSmallest(large.clone(), k, true)).isEqualTo(largeSorted[k]);
+            assertThat(Snippets.kthSmallest(boxed, k)).isEqualTo(largeSorted[k]);
+        }
+        int[] ascending = IntStream.range(0, 100_000).toArray();
+        assertThat(Snippets.kthSmallest(ascending, 77_777, true)).isEqualTo(77_777);
+    }
+
     @Test
     public void isSorted_return_1_when_array_sorted_is_ascending_order() throws Exception {
         int sorted = Snippets.isSorted(new Integer[]{0, 1, 2, 3});
@@ -283,6 +494,47 @@ public class SnippetsTests {
         assertThat(sorted).isEqualTo(0);
     }
 
+    @Test
+    public void isSorted_handles_short_arrays_and_leading_equal_elements() throws Exception {
+        assertThat(Snippets.isSorted(new Integer[0])).isEqualTo(1);
+        assertThat(Snippets.isSorted(new Integer[]{7})).isEqualTo(1);
+        assertThat(Snippets.isSorted(new Integer[]{2, 2, 3})).isEqualTo(1);
+        assertThat(Snippets.isSorted(new int[]{})).isEqualTo(1);
+        assertThat(Snippets.isSorted(new int[]{2, 2, 1, 1})).isEqualTo(-1);
+        assertThat(Snippets.isSorted(new int[]{2, 2, 1, 3})).isEqualTo(0);
+        assertThat(Snippets.isSorted(new String[]{"b", "a"}, Comparator.reverseOrder())).isEqualTo(1);
+        int[] large = IntStream.range(0, 100_000).toArray();
+        assertThat(Snippets.isSorted(large)).isEqualTo(1);
+        large[99_998] = -1;
+        assertThat(Snippets.isSorted(large)).isEqualTo(0);
+    }
+
+    @Test
+    public void sortedRuns_test() throws Exception {
+        assertThat(Snippets.sortedRuns(new int[]{1, 2, 0, 5, 5, 3})).isEqualTo(new int[]{0, 2, 5});
+        assertThat(Snippets.sortedRuns(new int[0])).isEmpty();
+    }
+
+    @Test
+    public void sorted_set_operations_match_set_semantics() throws Exception {
+        Random random = new Random(1);
+        int[][] sizes = {{0, 5}, {10, 10}, {50, 40}, {5, 1000}, {1000, 3}};
+        for (int[] size : sizes) {
+            int[] first = random.ints(size[0], 0, 100).sorted().toArray();
+            int[] second = random.ints(size[1], 0, 100).sorted().toArray();
+            Set<Integer> a = Arrays.stream(first).boxed().collect(Collectors.toCollection(TreeSet::new));
+            Set<Integer> b = Arrays.stream(second).boxed().collect(Collectors.toCollection(TreeSet::new));
+            assertThat(Snippets.sortedIntersection(first, second))
+                    .isEqualTo(a.stream().filter(b::contains).mapToInt(i -> i).toArray());
+            assertThat(Snippets.sortedDifference(first, second))
+                    .isEqualTo(a.stream().filter(v -> !b.contains(v)).mapToInt(i -> i).toArray());
+            assertThat(Snippets.sortedUnion(first, second))
+                    .isEqualTo(IntStream.concat(Arrays.stream(first), Arrays.stream(second)).sorted().distinct().toArray());
+            assertThat(Snippets.sortedSymmetricDifference(first, second))
+                    .isEqualTo(IntStream.range(0, 100).filter(v -> a.contains(v) != b.contains(v)).toArray());
+        }
+    }
+
     @Test
     public void join_should_create_string_from_an_array_with_different_sep_and_end() throws Exception {
         String joined = Snippets.join(new String[]{"pen", "pineapple", "apple", "pen"}, ",", "&");
@@ -476,6 +728,120 @@ public class SnippetsTests {
         );
     }
 
+    @Test
+    public void long_array_overloads() throws Exception {
+        long[] ids = {5_000_000_000L, 1L, 5_000_000_000L, 7L};
+        assertThat(Snippets.arrayMax(ids)).hasValue(5_000_000_000L);
+        assertThat(Snippets.arrayMin(ids)).hasValue(1L);
+        assertThat(Snippets.chunk(ids, 3)).containsExactly(new long[]{5_000_000_000L, 1L, 5_000_000_000L}, new long[]{7L});
+        assertThat(Snippets.countOccurrences(ids, 5_000_000_000L)).isEqualTo(2);
+        assertThat(Snippets.difference(ids, new long[]{1L})).containsExactly(5_000_000_000L, 5_000_000_000L, 7L);
+        assertThat(Snippets.intersection(ids, new long[]{7L, 8L})).containsExactly(7L);
+        assertThat(Snippets.distinctValuesOfArray(ids)).containsExactly(5_000_000_000L, 1L, 7L);
+        assertThat(Snippets.everyNth(ids, 2)).containsExactly(1L, 7L);
+        assertThat(Snippets.indexOf(ids, 5_000_000_000L)).isEqualTo(0);
+        assertThat(Snippets.lastIndexOf(ids, 5_000_000_000L)).isEqualTo(2);
+        assertThat(Snippets.average(new long[]{1L, 2L})).isEqualTo(1.5);
+    }
+
+    @Test
+    public void double_array_overloads() throws Exception {
+        double[] metrics = {0.5, 2.5, 0.5, -1.0};
+        assertThat(Snippets.arrayMax(metrics)).hasValue(2.5);
+        assertThat(Snippets.arrayMin(metrics)).hasValue(-1.0);
+        assertThat(Snippets.chunk(metrics, 2)).containsExactly(new double[]{0.5, 2.5}, new double[]{0.5, -1.0});
+        assertThat(Snippets.countOccurrences(metrics, 0.5)).isEqualTo(2);
+        assertThat(Snippets.difference(metrics, new double[]{0.5})).containsExactly(2.5, -1.0);
+        assertThat(Snippets.intersection(metrics, new double[]{-1.0})).containsExactly(-1.0);
+        assertThat(Snippets.distinctValuesOfArray(metrics)).containsExactly(0.5, 2.5, -1.0);
+        assertThat(Snippets.everyNth(metrics, 2)).containsExactly(2.5, -1.0);
+        assertThat(Snippets.indexOf(metrics, 0.5)).isEqualTo(0);
+        assertThat(Snippets.lastIndexOf(metrics, 0.5)).isEqualTo(2);
+        assertThat(Snippets.average(metrics)).isEqualTo(0.625);
+    }
+
+    @Test
+    public void double_array_overloads_agree_on_nan_and_signed_zero() throws Exception {
+        double[] values = {Double.NaN, 0.0, -0.0};
+        assertThat(Snippets.countOccurrences(values, Double.NaN)).isEqualTo(1);
+        assertThat(Snippets.indexOf(values, Double.NaN)).isEqualTo(0);
+        assertThat(Snippets.lastIndexOf(values, Double.NaN)).isEqualTo(0);
+        assertThat(Snippets.intersection(values, new double[]{Double.NaN})).hasSize(1);
+        assertThat(Snippets.countOccurrences(values, -0.0)).isEqualTo(1);
+        assertThat(Snippets.indexOf(values, -0.0)).isEqualTo(2);
+        assertThat(Snippets.lastIndexOf(values, 0.0)).isEqualTo(1);
+        assertThat(Snippets.difference(values, new double[]{0.0})).hasSize(2);
+        assertThat(Snippets.distinctValuesOfArray(values)).hasSize(3);
+    }
+
+    @Test
+    public void symmetricDifferenceStream_builds_each_lookup_only_when_needed() throws Exception {
+        AtomicInteger hashes = new AtomicInteger();
+        class Counted {
+            final int value;
+
+            Counted(int value) {
+                this.value = value;
+            }
+
+            @Override
+            public int hashCode() {
+                hashes.incrementAndGet();
+                return value;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o instanceof Counted && ((Counted) o).value == value;
+            }
+        }
+        Counted[] first = {new Counted(1), new Counted(2)};
+        Counted[] second = {new Counted(2), new Counted(3), new Counted(4)};
+        Stream<Counted> stream = Snippets.symmetricDifferenceStream(first, second);
+        assertThat(hashes.get()).isEqualTo(0);
+        // Hashes second into its lookup and probes it with first[0], without touching the lookup of first
+        assertThat(stream.findFirst()).containsSame(first[0]);
+        assertThat(hashes.get()).isEqualTo(second.length + 1);
+    }
+
+    @Test
+    public void collectors_match_array_snippets_on_parallel_streams() throws Exception {
+        List<Integer> numbers = IntStream.range(0, 10_000).map(i -> i % 7).boxed().collect(Collectors.toList());
+        Map<Integer, Long> frequencies = numbers.parallelStream().collect(Snippets.frequencies());
+        assertThat(frequencies).hasSize(7).containsEntry(0, 1429L).containsEntry(6, 1428L);
+        assertThat(numbers.parallelStream().collect(Snippets.distinctValues())).containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(Stream.of(1, 2, 3, 4, 5).parallel().collect(Snippets.chunk(2)))
+                .containsExactly(Arrays.asList(1, 2), Arrays.asList(3, 4), Collections.singletonList(5));
+        assertThat(Stream.of(1, 2, 3, 4, 5, 6).parallel().collect(Snippets.everyNth(2))).containsExactly(2, 4, 6);
+        List<List<Integer>> chunks = numbers.parallelStream().collect(Snippets.chunk(3));
+        assertThat(chunks).hasSize(3334);
+        assertThat(chunks.subList(0, 3333)).allMatch(chunk -> chunk.size() == 3);
+        assertThat(chunks.stream().flatMap(List::stream).collect(Collectors.toList())).isEqualTo(numbers);
+        assertThatThrownBy(() -> Snippets.chunk(0)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(Stream.of(1, 2, 2, 3, 4, 4, 5).parallel().collect(Snippets.filterNonUnique())).containsExactly(1, 3, 5);
+        assertThat(Stream.of("one", "two", "three").parallel().collect(Snippets.groupBy(String::length, Collectors.counting())))
+                .containsOnly(new SimpleEntry<>(3, 2L), new SimpleEntry<>(5, 1L));
+    }
+
+    @Test
+    public void join_collector_matches_join() throws Exception {
+        String[] words = {"pen", "pineapple", "apple", "pen"};
+        for (int n = 0; n <= words.length; n++) {
+            String[] prefix = Arrays.copyOf(words, n);
+            assertThat(IntStream.range(0, 50).mapToObj(i -> prefix).flatMap(Arrays::stream).skip(49L * n).parallel()
+                    .collect(Snippets.join(",", "&"))).isEqualTo(Snippets.join(prefix, ",", "&"));
+        }
+        assertThat(IntStream.range(0, 1000).boxed().parallel().collect(Snippets.join(",", "&")))
+                .isEqualTo(Snippets.join(IntStream.range(0, 1000).boxed().toArray(Integer[]::new), ",", "&"));
+    }
+
+    @Test
+    public void sampleSize_collector_picks_distinct_elements() throws Exception {
+        List<Integer> sample = IntStream.range(0, 10_000).boxed().parallel().collect(Snippets.sampleSize(10));
+        assertThat(sample).hasSize(10).doesNotHaveDuplicates().allMatch(i -> i >= 0 && i < 10_000);
+        assertThat(Stream.of(1, 2).parallel().collect(Snippets.sampleSize(5))).containsOnly(1, 2).hasSize(2);
+    }
+
     @Test
     public void average_of_1_to_10_is_5_dot_5() throws Exception {
         double average = Snippets.average(IntStream.rangeClosed(1, 10).toArray());
@@ -514,6 +880,23 @@ public class SnippetsTests {
     @Test
     public void countVowels_test() throws Exception {
         assertThat(Snippets.countVowels("foobar")).isEqualTo(3);
+        assertThat(Snippets.countVowels("\u20ACuro")).isEqualTo(2);
+        assertThat(Snippets.countVowels("")).isEqualTo(0);
+    }
+
+    @Test
+    public void charHistogram_counts_each_char() throws Exception {
+        int[] histogram = Snippets.charHistogram("abba");
+        assertThat(histogram).hasSize('b' + 1);
+        assertThat(histogram['a']).isEqualTo(2);
+        assertThat(histogram['b']).isEqualTo(2);
+    }
+
+    @Test
+    public void isAnagram_test() throws Exception {
+        assertThat(Snippets.isAnagram("listen", "silent")).isTrue();
+        assertThat(Snippets.isAnagram("listen", "silence")).isFalse();
+        assertThat(Snippets.isAnagram("aab", "abb")).isFalse();
     }
 
     @Test
@@ -521,6 +904,52 @@ public class SnippetsTests {
         assertThat(Snippets.escapeRegExp("(test)")).isEqualTo("\\Q(test)\\E");
     }
 
+    @Test
+    public void match_reuses_cached_patterns() throws Exception {
+        assertThat(Snippets.match("a1b22c333", "\\d+")).containsExactly("1", "22", "333");
+        assertThat(Snippets.cachedPattern("\\d+")).isSameAs(Snippets.cachedPattern("\\d+"));
+        assertThat(Snippets.match("a1b22", Snippets.cachedPattern("[a-z]"))).containsExactly("a", "b");
+    }
+
+    @Test
+    public void keywordMatcher_finds_overlapping_keywords_in_one_pass() throws Exception {
+        Snippets.KeywordMatcher matcher = Snippets.keywordMatcher(Arrays.asList("he", "she", "his", "hers"));
+        assertThat(matcher.findAll("ushers")).containsExactly("she", "he", "hers");
+        List<Integer> starts = new ArrayList<>();
+        matcher.forEachMatch("ushers", (keyword, start) -> starts.add(start));
+        assertThat(starts).containsExactly(1, 2, 2);
+        assertThat(matcher.containsAny("this")).isTrue();
+        assertThat(matcher.containsAny("xyz")).isFalse();
+        assertThat(Snippets.keywordMatcher(Collections.emptyList()).findAll("anything")).isEmpty();
+        assertThatThrownBy(() -> Snippets.keywordMatcher(Collections.singletonList("")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void keywordMatcher_matches_brute_force_search() throws Exception {
+        Random random = new Random(11);
+        List<String> keywords = IntStream.range(0, 500)
+                .mapToObj(i -> random.ints(1 + random.nextInt(4), 'a', 'e')
+                        .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                        .toString())
+                .distinct()
+                .collect(Collectors.toList());
+        String text = random.ints(5_000, 'a', 'f')
+                .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
+                .toString();
+        List<String> expected = new ArrayList<>();
+        for (int end = 1; end <= text.length(); end++) {
+            for (int start = end - 1; start >= Math.max(0, end - 4); start--) {
+                if (keywords.contains(text.substring(start, end))) {
+                    expected.add(text.substring(start, end));
+                }
+            }
+        }
+        List<String> found = Snippets.keywordMatcher(keywords).findAll(text);
+        assertThat(found).hasSameSizeAs(expected);
+        assertThat(found).containsExactlyInAnyOrder(expected.toArray(new String[0]));
+    }
+
     @Test
     public void fromCamelCase_test() throws Exception {
         assertThat(Snippets.fromCamelCase("someJavaProperty", "_"))
@@ -552,12 +981,121 @@ public class SnippetsTests {
         assertThat(Snippets.mask("1234567890", -4, "*")).isEqualTo("1234******");
     }
 
+    @Test
+    public void mask_keeps_line_terminators() throws Exception {
+        assertThat(Snippets.mask("12\r\n34\n5678", 2, "*")).isEqualTo("**\r\n**\n**78");
+        assertThat(Snippets.mask("12\u202834", -1, "#")).isEqualTo("1#\u2028##");
+    }
+
+    @Test
+    public void mask_with_multi_character_mask_and_shared_buffer() throws Exception {
+        StringBuilder record = new StringBuilder();
+        Snippets.mask("4111222233334444", 4, "*", record).append(' ');
+        Snippets.mask("\uD83D\uDE00ab", 2, "<>", record);
+        assertThat(record.toString()).isEqualTo("************4444 <>ab");
+        assertThat(Snippets.mask("secret", 0, "$1")).isEqualTo("$1$1$1$1$1$1");
+    }
+
+    @Test
+    public void mask_keeps_surrogate_pairs_whole() throws Exception {
+        assertThat(Snippets.mask("a\uD83D\uDE00b", 2, "*")).isEqualTo("*\uD83D\uDE00b");
+        assertThat(Snippets.mask("\uD83D\uDE00bc", -1, "*")).isEqualTo("\uD83D\uDE00**");
+    }
+
     @Test
     public void palindrome_test() throws Exception {
         assertThat(Snippets.isPalindrome("taco cat")).isTrue();
         assertThat(Snippets.isPalindrome("abc")).isFalse();
     }
 
+    @Test
+    public void batch_string_apis_match_single_string_versions() throws Exception {
+        Random random = new Random(5);
+        String alphabet = "aAbBzZ09 _-.,xyHTTPRequest\u00E9\u00DF\u20AC\uD83D\uDE00";
+        List<String> inputs = new ArrayList<>(Arrays.asList("taco cat", "A man, a plan, a canal: Panama", "someFieldName",
+                "XMLHttpRequest", "hello \uD83D\uDE00 world", "\uDE00\uD83D", "x", "4111222233334444"));
+        for (int i = 0; i < 500; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int n = 1 + random.nextInt(40); n > 0; n--) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            inputs.add(sb.toString());
+        }
+        for (int threshold : new int[]{1, Integer.MAX_VALUE}) {
+            String[] strings = new String[inputs.size()];
+            boolean[] booleans = new boolean[inputs.size()];
+            int[] ints = new int[inputs.size()];
+
+            Snippets.capitalize(inputs, true, strings, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.capitalize(inputs.get(i), true));
+            }
+            Snippets.capitalize(inputs, false, strings, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.capitalize(inputs.get(i), false));
+            }
+            Snippets.toSnakeCase(inputs, strings, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.toSnakeCase(inputs.get(i)));
+            }
+            Snippets.isPalindrome(inputs, booleans, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(booleans[i]).isEqualTo(Snippets.isPalindrome(inputs.get(i)));
+            }
+            Snippets.mask(inputs, 1, "*", strings, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.mask(inputs.get(i), 1, "*"));
+            }
+            Snippets.byteSize(inputs, ints, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(ints[i]).isEqualTo(Snippets.byteSize(inputs.get(i)));
+            }
+            Snippets.reverseString(inputs, strings, threshold);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.reverseString(inputs.get(i)));
+            }
+        }
+        assertThatThrownBy(() -> Snippets.reverseString(inputs, new String[1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void batch_string_apis_follow_single_string_versions_in_turkish_locale() throws Exception {
+        List<String> inputs = Arrays.asList("Iki", "ikI", "Taco Cit", "someIdField", "IIi");
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            String[] strings = new String[inputs.size()];
+            boolean[] booleans = new boolean[inputs.size()];
+            Snippets.isPalindrome(inputs, booleans);
+            Snippets.capitalize(inputs, true, strings);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(booleans[i]).isEqualTo(Snippets.isPalindrome(inputs.get(i)));
+                assertThat(strings[i]).isEqualTo(Snippets.capitalize(inputs.get(i), true));
+            }
+            Snippets.toSnakeCase(inputs, strings);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertThat(strings[i]).isEqualTo(Snippets.toSnakeCase(inputs.get(i)));
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void batch_string_apis_handle_empty_and_oversized_inputs() throws Exception {
+        assertThatThrownBy(() -> Snippets.capitalize(Collections.singletonList(""), true, new String[1]))
+                .isInstanceOf(StringIndexOutOfBoundsException.class);
+        String large = String.join("", Collections.nCopies(50_000, "ab"));
+        String[] strings = new String[1];
+        Snippets.reverseString(Collections.singletonList(large), strings);
+        assertThat(strings[0]).isEqualTo(Snippets.reverseString(large));
+        Snippets.mask(Collections.singletonList(large), 4, "*", strings);
+        assertThat(strings[0]).isEqualTo(Snippets.mask(large, 4, "*"));
+        Snippets.mask(Collections.singletonList("abcdef"), 2, "*", strings);
+        assertThat(strings[0]).isEqualTo("****ef");
+    }
+
     @Test
     public void reverseString_test() throws Exception {
         assertThat(Snippets.reverseString("foobar")).isEqualTo("raboof");
@@ -566,6 +1104,8 @@ public class SnippetsTests {
     @Test
     public void sortCharactersInString_test() throws Exception {
         assertThat(Snippets.sortCharactersInString("cabbage")).isEqualTo("aabbceg");
+        assertThat(Snippets.sortCharactersInString("\u20AC\u00E9a\u20ACb")).isEqualTo("ab\u00E9\u20AC\u20AC");
+        assertThat(Snippets.sortCharactersInString("")).isEmpty();
     }
 
     @Test
@@ -579,6 +1119,136 @@ public class SnippetsTests {
                 });
     }
 
+    @Test
+    public void lineIterator_splits_like_splitLines() throws Exception {
+        String longLine = String.join("", Collections.nCopies(8191, "x"));
+        String[] inputs = {"", "\n", "\r\n", "a", "a\rb\n", "\n\na\r\n\r\nb\n\n\n", "This\nis a\nmultiline\nstring.\n",
+                longLine + "\r\n" + longLine + longLine + "\ny"};
+        for (String input : inputs) {
+            assertThat(lines(Snippets.lineIterator(new StringReader(input)))).isEqualTo(Snippets.splitLines(input));
+            assertThat(lines(Snippets.lineIterator(CharBuffer.wrap(input)))).isEqualTo(Snippets.splitLines(input));
+        }
+    }
+
+    private static String[] lines(Iterator<CharSequence> iterator) {
+        List<String> lines = new ArrayList<>();
+        iterator.forEachRemaining(line -> lines.add(line.toString()));
+        return lines.toArray(new String[0]);
+    }
+
+    @Test
+    public void stackTraceAsString_with_limits_filters_and_bounds_frames() throws Exception {
+        Exception exception = new IllegalStateException("outer", new IllegalArgumentException("inner"));
+        String trace = Snippets.stackTraceAsString(exception, 1, 10_000, "snippets.");
+        String[] lines = Snippets.splitLines(trace);
+        assertThat(lines[0]).isEqualTo("java.lang.IllegalStateException: outer");
+        assertThat(lines[1]).startsWith("\tat snippets.SnippetsTests.stackTraceAsString_with_limits");
+        assertThat(lines[2]).matches("\t\\.\\.\\. \\d+ more");
+        assertThat(lines[3]).isEqualTo("Caused by: java.lang.IllegalArgumentException: inner");
+        assertThat(Snippets.stackTraceAsString(exception, 100, 20)).isEqualTo("java.lang.Illegal...");
+    }
+
+    @Test
+    public void stackTraceAsString_with_limits_renders_each_message_of_identical_traces() throws Exception {
+        Exception[] exceptions = new Exception[2];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = new IllegalStateException("storm " + i);
+        }
+        String first = Snippets.stackTraceAsString(exceptions[0], 5, 1000);
+        String second = Snippets.stackTraceAsString(exceptions[1], 5, 1000);
+        assertThat(first).startsWith("java.lang.IllegalStateException: storm 0");
+        assertThat(second).isEqualTo(first.replace("storm 0", "storm 1"));
+        assertThat(Snippets.appendStackTrace(exceptions[1], 5, 1000, new StringBuilder("error: ")).toString())
+                .isEqualTo("error: " + second);
+    }
+
+    @Test
+    public void stackTraceAsString_with_limits_never_exceeds_max_chars() throws Exception {
+        Exception exception = new IllegalStateException("boom");
+        String full = Snippets.stackTraceAsString(exception, 5, Integer.MAX_VALUE);
+        assertThat(Snippets.stackTraceAsString(exception, 5, 2)).isEqualTo("ja");
+        assertThat(Snippets.stackTraceAsString(exception, 5, 0)).isEmpty();
+        assertThat(Snippets.stackTraceAsString(exception, 5, 4)).isEqualTo("j...");
+        assertThat(Snippets.stackTraceAsString(exception, 5, full.length())).isEqualTo(full);
+        assertThat(Snippets.stackTraceAsString(exception, 5, full.length() - 1))
+                .hasSize(full.length() - 1)
+                .endsWith("...");
+    }
+
+    @Test
+    public void instrument_records_calls_only_when_enabled() throws Exception {
+        Snippets.resetInstrumentation();
+        Snippets.instrument("anagrams", 3, () -> Snippets.anagrams("abc"));
+        assertThat(Snippets.instrumentationSnapshot()).isEmpty();
+
+        Snippets.enableInstrumentation(true);
+        try {
+            List<String> anagrams = Snippets.instrument("anagrams", 3, () -> Snippets.anagrams("abc"));
+            Snippets.instrument("anagrams", 4, () -> Snippets.anagrams("abcd"));
+            assertThat(anagrams).hasSize(6);
+        } finally {
+            Snippets.enableInstrumentation(false);
+        }
+        long[] stats = Snippets.instrumentationSnapshot().get("anagrams");
+        assertThat(stats).hasSize(513);
+        assertThat(stats[0]).isEqualTo(2);
+        assertThat(stats[1 + 4 * 1 + 2]).isEqualTo(1);
+        assertThat(stats[1 + 4 * 2]).isEqualTo(1);
+        assertThat(Arrays.stream(stats, 1, 257).sum()).isEqualTo(2);
+        assertThat(Arrays.stream(stats, 257, 513).sum()).isEqualTo(2);
+        Snippets.resetInstrumentation();
+    }
+
+    @Test
+    public void instrument_records_nothing_when_disabled() throws Exception {
+        Snippets.resetInstrumentation();
+        Snippets.enableInstrumentation(false);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 1000; i++) {
+            assertThat(Snippets.instrument("countVowels", i, () -> calls.incrementAndGet())).isEqualTo(i + 1);
+        }
+        assertThat(calls.get()).isEqualTo(1000);
+        assertThat(Snippets.instrumentationSnapshot()).isEmpty();
+    }
+
+    @Test
+    public void instrument_splits_powers_of_two_into_linear_sub_buckets() throws Exception {
+        Snippets.resetInstrumentation();
+        Snippets.enableInstrumentation(true);
+        try {
+            Snippets.instrument("sizes", 896, () -> null);
+            Snippets.instrument("sizes", 1023, () -> null);
+            Snippets.instrument("sizes", 895, () -> null);
+            Snippets.instrument("sizes", 0, () -> null);
+        } finally {
+            Snippets.enableInstrumentation(false);
+        }
+        long[] stats = Snippets.instrumentationSnapshot().get("sizes");
+        assertThat(stats[1 + 4 * 9 + 3]).isEqualTo(2);
+        assertThat(stats[1 + 4 * 9 + 2]).isEqualTo(1);
+        assertThat(stats[1]).isEqualTo(1);
+        Snippets.resetInstrumentation();
+    }
+
+    @Test
+    public void instrumentation_mbean_exposes_call_stats() throws Exception {
+        ObjectName name = Snippets.registerInstrumentationMBean();
+        assertThat(Snippets.registerInstrumentationMBean()).isEqualTo(name);
+        Snippets.InstrumentationMXBean bean = JMX.newMXBeanProxy(
+                ManagementFactory.getPlatformMBeanServer(), name, Snippets.InstrumentationMXBean.class);
+        Snippets.resetInstrumentation();
+        bean.setEnabled(true);
+        try {
+            Snippets.instrument("reverseString", 3, () -> Snippets.reverseString("abc"));
+        } finally {
+            bean.setEnabled(false);
+        }
+        assertThat(bean.isEnabled()).isFalse();
+        assertThat(bean.getCallStats().get("reverseString")[0]).isEqualTo(1);
+        bean.reset();
+        assertThat(Snippets.instrumentationSnapshot()).isEmpty();
+    }
+
     @Test
     public void toCamelCase_test() throws Exception {
         assertThat(Snippets.toCamelCase("some_database_field_name")).isEqualTo("someDatabaseFieldName");
@@ -605,11 +1275,45 @@ public class SnippetsTests {
         assertThat(Snippets.toSnakeCase("IAmListeningToFMWhileLoadingDifferentURLOnMyBrowserAndAlsoEditingXMLAndHTML")).isEqualTo("i_am_listening_to_fm_while_loading_different_url_on_my_browser_and_also_editing_xml_and_html");
     }
 
+    @Test
+    public void memoize_caches_conversions_up_to_its_bound() throws Exception {
+        Snippets.BoundedCache<String, String> snakeCase = Snippets.memoize(Snippets::toSnakeCase, 3);
+        snakeCase.precompute(Arrays.asList("userId", "createdAt"));
+        assertThat(snakeCase.apply("userId")).isEqualTo("user_id");
+        assertThat(snakeCase.apply("userId")).isEqualTo("user_id");
+        assertThat(snakeCase.apply("orderTotal")).isEqualTo("order_total");
+        assertThat(snakeCase.hitCount()).isEqualTo(2);
+        assertThat(snakeCase.missCount()).isEqualTo(1);
+
+        IntStream.range(0, 1000).parallel().forEach(i -> snakeCase.apply("field" + i + "Name"));
+        assertThat(snakeCase.size()).isLessThanOrEqualTo(3);
+        assertThat(snakeCase.apply("field7Name")).isEqualTo(Snippets.toSnakeCase("field7Name"));
+    }
+
+    @Test
+    public void memoize_keeps_hot_keys_through_a_stream_of_cold_ones() throws Exception {
+        Snippets.BoundedCache<String, String> snakeCase = Snippets.memoize(Snippets::toSnakeCase, 100);
+        for (int i = 0; i < 10_000; i++) {
+            snakeCase.apply("hot" + i % 10 + "Field");
+            snakeCase.apply("cold" + i + "Field");
+        }
+        assertThat(snakeCase.hitCount()).isEqualTo(10_000 - 10);
+        assertThat(snakeCase.missCount()).isEqualTo(10_000 + 10);
+        assertThat(snakeCase.size()).isEqualTo(100);
+        assertThatThrownBy(() -> Snippets.<String, String>memoize(Snippets::toSnakeCase, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void truncateString_test() throws Exception {
         assertThat(Snippets.truncateString("boomerang", 7)).isEqualTo("boom...");
     }
 
+    @Test
+    public void truncateString_does_not_split_surrogate_pairs() throws Exception {
+        assertThat(Snippets.truncateString("ab\uD83D\uDE00cdef", 6)).isEqualTo("ab...");
+        assertThat(Snippets.truncateString("boom", 7, new StringBuilder(">")).toString()).isEqualTo(">boom");
+    }
+
     @Test
     public void words_test() throws Exception {
         assertThat(Snippets.words("I love java!!")).isEqualTo(new String[]{"I", "love", "java"});
@@ -621,6 +1325,27 @@ public class SnippetsTests {
         assertThat(Snippets.randomInts(5, 100, 200)).hasSize(5);
     }
 
+    @Test
+    public void seeded_randomInts_do_not_depend_on_parallelism() throws Exception {
+        int[] values = Snippets.randomInts(200_000, 100, 200, 42L);
+        assertThat(Arrays.stream(values).allMatch(v -> v >= 100 && v < 200)).isTrue();
+        assertThat(new ForkJoinPool(1).submit(() -> Snippets.randomInts(new int[200_000], 100, 200, 42L)).get())
+                .isEqualTo(values);
+        assertThat(Snippets.randomInts(200_000, 100, 200, 43L)).isNotEqualTo(values);
+
+        IntBuffer buffer = IntBuffer.allocate(200_001);
+        buffer.position(1);
+        Snippets.randomInts(buffer, 100, 200, 42L);
+        assertThat(Arrays.copyOfRange(buffer.array(), 1, 200_001)).isEqualTo(values);
+    }
+
+    @Test
+    public void seeded_randomLongs_test() throws Exception {
+        long[] values = Snippets.randomLongs(new long[100_000], -5, 5, 7L);
+        assertThat(Arrays.stream(values).allMatch(v -> v >= -5 && v < 5)).isTrue();
+        assertThat(Snippets.randomLongs(new long[100_000], -5, 5, 7L)).isEqualTo(values);
+    }
+
     @Test
     public void concat_test() throws Exception {
         String[] first = {"a", "b"};
@@ -629,6 +1354,66 @@ public class SnippetsTests {
                 .isEqualTo(new String[]{"a", "b", "c", "d"});
     }
 
+    @Test
+    public void chunkedArray_appends_batches_without_copying() throws Exception {
+        Snippets.ChunkedArray<String> rope = Snippets.<String>chunkedArray()
+                .append(new String[]{"a", "b"})
+                .append(new String[0])
+                .append(new String[]{"c"})
+                .append(new String[]{"d", "e", "f"});
+        assertThat(rope.size()).isEqualTo(6);
+        assertThat(rope.get(0)).isEqualTo("a");
+        assertThat(rope.get(2)).isEqualTo("c");
+        assertThat(rope.get(5)).isEqualTo("f");
+        assertThatThrownBy(() -> rope.get(6)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(rope.toArray(String[]::new)).containsExactly("a", "b", "c", "d", "e", "f");
+        assertThat(rope).containsExactly("a", "b", "c", "d", "e", "f");
+
+        Snippets.ChunkedArray<String> slice = rope.slice(1, 5);
+        assertThat(slice.toArray(String[]::new)).containsExactly("b", "c", "d", "e");
+        assertThat(slice.slice(2, 4).stream()).containsExactly("d", "e");
+        assertThat(rope.slice(3, 3).size()).isEqualTo(0);
+        assertThat(slice.append(rope.slice(0, 1)).toArray(String[]::new)).containsExactly("b", "c", "d", "e", "a");
+        assertThat(rope.size()).isEqualTo(6);
+    }
+
+    @Test
+    public void chunkedArray_splits_for_parallel_streams() throws Exception {
+        Snippets.ChunkedArray<Integer> rope = Snippets.chunkedArray();
+        for (int batch = 0; batch < 1_000; batch++) {
+            int from = batch * 37;
+            rope.append(IntStream.range(from, from + 37).boxed().toArray(Integer[]::new));
+        }
+        int[] expected = IntStream.range(0, 37_000).toArray();
+        assertThat(rope.toIntArray(Integer::intValue)).isEqualTo(expected);
+        assertThat(rope.parallelStream().mapToInt(Integer::intValue).toArray()).isEqualTo(expected);
+        assertThat(rope.slice(100, 30_000).parallelStream().mapToLong(Integer::longValue).sum())
+                .isEqualTo(LongStream.range(100, 30_000).sum());
+        Iterator<Integer> iterator = rope.slice(36, 40).iterator();
+        assertThat(iterator.next()).isEqualTo(36);
+        assertThat(iterator.next()).isEqualTo(37);
+    }
+
+    @Test
+    public void environment_is_cached_until_refreshed() throws Exception {
+        Snippets.Environment environment = Snippets.environment();
+        assertThat(Snippets.environment()).isSameAs(environment);
+        assertThat(Snippets.osName()).isEqualTo(System.getProperty("os.name").toLowerCase());
+        assertThat(Snippets.tmpDirName()).endsWith(File.separator);
+        assertThat(Snippets.isDebuggerAttached()).isEqualTo(environment.isDebuggerAttached());
+
+        String tmpDir = System.getProperty("java.io.tmpdir");
+        try {
+            System.setProperty("java.io.tmpdir", "/elsewhere");
+            assertThat(Snippets.tmpDirName()).isEqualTo(environment.tmpDirName());
+            assertThat(Snippets.refreshEnvironment()).isNotSameAs(environment);
+            assertThat(Snippets.tmpDirName()).isEqualTo("/elsewhere" + File.separator);
+        } finally {
+            System.setProperty("java.io.tmpdir", tmpDir);
+            Snippets.refreshEnvironment();
+        }
+    }
+
     @Test
     public void getCurrentWorkingDirectoryPath_test() throws Exception {
         assertThat(Snippets.getCurrentWorkingDirectoryPath()).isNotBlank();
@@ -664,6 +1449,239 @@ public class SnippetsTests {
         assertThat(intArray).isEqualTo(new int[]{1, 2, 3, 4, 5});
     }
 
+    @Test
+    public void stringToIntegers_handles_any_whitespace_and_signs() throws Exception {
+        assertThat(Snippets.stringToIntegers("  1\t-2\r\n+3   2147483647 -2147483648\n"))
+                .isEqualTo(new int[]{1, -2, 3, Integer.MAX_VALUE, Integer.MIN_VALUE});
+        assertThat(Snippets.stringToIntegers(" ")).isEmpty();
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void stringToIntegers_rejects_overflow() throws Exception {
+        Snippets.stringToIntegers("1 2147483648");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void stringToIntegers_rejects_lone_sign() throws Exception {
+        Snippets.stringToIntegers("1 - 2");
+    }
+
+    @Test
+    public void bytesToLongs_test() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap("10\n-9223372036854775808 9223372036854775807\t7".getBytes(StandardCharsets.US_ASCII));
+        assertThat(Snippets.bytesToLongs(buffer)).containsExactly(10L, Long.MIN_VALUE, Long.MAX_VALUE, 7L);
+    }
+
+    @Test
+    public void topWordsInFile_counts_words_across_chunks() throws Exception {
+        Path file = Files.createTempFile("words", ".txt");
+        try {
+            String text = IntStream.range(0, 200)
+                    .mapToObj(i -> i % 3 == 0 ? "Java, kotlin-lang & java!!" : "java")
+                    .collect(Collectors.joining(" "));
+            Files.write(file, text.getBytes(StandardCharsets.US_ASCII));
+            Map<String, Long> top = Snippets.topWordsInFile(file, 2, 7);
+            assertThat(top).containsExactly(
+                    new SimpleEntry<>("java", 200L),
+                    new SimpleEntry<>("Java", 67L));
+            assertThat(Snippets.topWordsInFile(file, 5)).hasSize(3).containsEntry("kotlin-lang", 67L);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readFilesAsStrings_reads_all_files_and_reports_failures() throws Exception {
+        Path dir = Files.createTempDirectory("files");
+        try {
+            List<Path> paths = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                paths.add(Files.write(dir.resolve(i + ".txt"), ("file " + i).getBytes(StandardCharsets.UTF_8)));
+            }
+            Path missing = dir.resolve("missing.txt");
+            paths.add(missing);
+
+            Map<Path, CompletableFuture<String>> files = Snippets.readFilesAsStrings(paths, 4, 1);
+            assertThat(files.keySet()).containsExactlyElementsOf(paths);
+            for (int i = 0; i < 20; i++) {
+                assertThat(files.get(paths.get(i)).get()).isEqualTo("file " + i);
+            }
+            assertThat(files.get(missing)).isCompletedExceptionally();
+            assertThatThrownBy(() -> files.get(missing).join()).hasRootCauseInstanceOf(NoSuchFileException.class);
+
+            List<Path> twice = Arrays.asList(paths.get(0), paths.get(1), paths.get(0));
+            assertThat(Snippets.readFilesAsStrings(twice, 2)).containsOnlyKeys(paths.get(0), paths.get(1));
+            assertThatThrownBy(() -> Snippets.readFilesAsStrings(paths, 0)).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void readFileAsStringAsync_reads_and_decodes_across_chunks() throws Exception {
+        Path file = Files.createTempFile("async", ".txt");
+        try {
+            String content = String.join("", Collections.nCopies(50_000, "h\u00E9llo \u20AC "));
+            Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+            List<CompletableFuture<String>> reads = IntStream.range(0, 100)
+                    .mapToObj(i -> Snippets.readFileAsStringAsync(file))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<String> read : reads) {
+                assertThat(read.get()).isEqualTo(content);
+            }
+            assertThatThrownBy(() -> Snippets.readFileAsStringAsync(file.resolveSibling("missing-" + file.getFileName())).join())
+                    .hasCauseInstanceOf(NoSuchFileException.class);
+            assertThat(Snippets.readFileAsStringAsync(file).get()).isEqualTo(content);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readFileAsStringAsync_cancelling_releases_slot_and_buffer() throws Exception {
+        Path file = Files.createTempFile("async", ".txt");
+        BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .findFirst()
+                .get();
+        BlockedExecutor first = new BlockedExecutor();
+        BlockedExecutor second = new BlockedExecutor();
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            // Every slot holds a read that can not finish until its executor is released, so the next read queues
+            List<CompletableFuture<String>> inFlight = IntStream.range(0, 64)
+                    .mapToObj(i -> Snippets.readFileAsStringAsync(file, first))
+                    .collect(Collectors.toList());
+            awaitSubmitted(first, 64);
+            long buffers = direct.getCount();
+            CompletableFuture<String> queued = Snippets.readFileAsStringAsync(file);
+            assertThat(queued.cancel(true)).isTrue();
+            assertThat(inFlight.get(0).cancel(true)).isTrue();
+
+            first.release.countDown();
+            for (CompletableFuture<String> read : inFlight.subList(1, 64)) {
+                assertThat(read.get()).isEqualTo("content");
+            }
+            // All 64 slots come back, and the reads holding them reuse the pooled buffers
+            List<CompletableFuture<String>> again = IntStream.range(0, 64)
+                    .mapToObj(i -> Snippets.readFileAsStringAsync(file, second))
+                    .collect(Collectors.toList());
+            awaitSubmitted(second, 64);
+            assertThat(direct.getCount()).isLessThanOrEqualTo(buffers);
+            second.release.countDown();
+            for (CompletableFuture<String> read : again) {
+                assertThat(read.get()).isEqualTo("content");
+            }
+        } finally {
+            first.release.countDown();
+            second.release.countDown();
+            first.shutdown();
+            second.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readFileAsStringAsync_drains_many_cancelled_reads_without_recursion() throws Exception {
+        Path file = Files.createTempFile("async", ".txt");
+        BlockedExecutor blocked = new BlockedExecutor();
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            List<CompletableFuture<String>> inFlight = IntStream.range(0, 64)
+                    .mapToObj(i -> Snippets.readFileAsStringAsync(file, blocked))
+                    .collect(Collectors.toList());
+            awaitSubmitted(blocked, 64);
+            // Each of these finishes as soon as it is started, which used to start the next one a frame deeper
+            for (int i = 0; i < 200_000; i++) {
+                Snippets.readFileAsStringAsync(file).cancel(true);
+            }
+            blocked.release.countDown();
+            for (CompletableFuture<String> read : inFlight) {
+                assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("content");
+            }
+            List<CompletableFuture<String>> later = IntStream.range(0, 128)
+                    .mapToObj(i -> Snippets.readFileAsStringAsync(file))
+                    .collect(Collectors.toList());
+            for (CompletableFuture<String> read : later) {
+                assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo("content");
+            }
+        } finally {
+            blocked.release.countDown();
+            blocked.shutdown();
+            Files.delete(file);
+        }
+    }
+
+    private static void awaitSubmitted(BlockedExecutor executor, int tasks) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.submitted.get() < tasks && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(executor.submitted.get()).isEqualTo(tasks);
+    }
+
+    /**
+     * Holds every task until released, counting the tasks submitted.
+     */
+    private static class BlockedExecutor extends ThreadPoolExecutor {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger submitted = new AtomicInteger();
+
+        BlockedExecutor() {
+            super(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            submitted.incrementAndGet();
+            super.execute(command);
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void readLongsFromFile_splits_file_at_whitespace() throws Exception {
+        Path file = Files.createTempFile("numbers", ".txt");
+        try {
+            long[] expected = LongStream.range(0, 1000).map(i -> i * i - 500).toArray();
+            Files.write(file, Arrays.stream(expected).mapToObj(Long::toString)
+                    .collect(Collectors.joining(" \n")).getBytes(StandardCharsets.US_ASCII));
+            assertThat(Snippets.readLongsFromFile(file, 7)).isEqualTo(expected);
+            assertThat(Snippets.readLongsFromFile(file)).isEqualTo(expected);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void readLongsFromFile_reports_invalid_number_at_file_offset() throws Exception {
+        Path file = Files.createTempFile("numbers", ".txt");
+        try {
+            Files.write(file, "1000 2000 3000 4x00 5000".getBytes(StandardCharsets.US_ASCII));
+            assertThatThrownBy(() -> Snippets.readLongsFromFile(file, 4))
+                    .isInstanceOf(NumberFormatException.class)
+                    .hasMessage("Invalid number at byte 15");
+            assertThatThrownBy(() -> Snippets.readLongsFromFile(file, 0))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
     private static class Class1 implements I2, I1, I5 {
         // empty
     }